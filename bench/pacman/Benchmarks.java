@@ -0,0 +1,51 @@
+package pacman;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import pacman.active.ExplorerBenchmark;
+import pacman.passive.GameControllerBenchmark;
+
+import static java.lang.System.out;
+
+/**
+ * Runs the benchmarks: the game controller hot paths with 1 to 1024 concurrent movers and the random walk step.
+ * Results are written as JSON files in the working directory, which must contain the resources folder.
+ */
+public class Benchmarks {
+
+    private static final int[] MOVERS = {1, 4, 32, 128, 1024};
+
+    /**
+     * @param args optional regular expression selecting the game controller benchmarks to run
+     */
+    public static void main(String[] args) throws RunnerException {
+        String filter = args.length > 0 ? args[0] : "";
+
+        for (int movers : MOVERS) {
+            out.println("Game controller with " + movers + " movers");
+
+            Options options = new OptionsBuilder()
+                    .include(GameControllerBenchmark.class.getName() + "." + filter)
+                    .threads(movers)
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result("bench-controller-" + movers + ".json")
+                    .build();
+
+            new Runner(options).run();
+        }
+
+        Options options = new OptionsBuilder()
+                .include(ExplorerBenchmark.class.getName())
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result("bench-explorer.json")
+                .build();
+
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,41 @@
+package pacman.active;
+
+import org.openjdk.jmh.annotations.*;
+import pacman.passive.GameController;
+
+import java.awt.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one step of the entity random walk ({@link Explorer}), without pausing nor reporting it to the game
+ * controller. Run with the GC profiler to see the allocation rate per step.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ExplorerBenchmark {
+
+    Ghost ghost;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        GameController gc = new GameController(-1, 1000, true, true, ExecutionMode.TICK);
+
+        ghost = new Ghost("walker", gc, 'G', gc.getPositions('.')[0], 1, 2, 100);
+        gc.attachExtraEntity(ghost);
+        ghost.start();
+        ghost.prepareSteps(42);
+    }
+
+    @Benchmark
+    public Point step() {
+        Point plan = ghost.planStep();
+        if (plan != null)
+            ghost.stepCommitted(plan);
+
+        return plan;
+    }
+}
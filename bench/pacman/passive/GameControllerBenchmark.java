@@ -0,0 +1,84 @@
+package pacman.passive;
+
+import org.openjdk.jmh.annotations.*;
+import pacman.active.ExecutionMode;
+import pacman.active.Ghost;
+
+import java.awt.*;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Throughput and latency of the game controller hot paths, with as many concurrent movers as benchmark threads
+ * (see {@link pacman.Benchmarks}). Each mover owns a ghost that random walks the board one reported move at a time.
+ * The controller runs headless, in tick mode, so no entity threads compete with the benchmark threads.
+ * Lives in the controller package to report moves on behalf of the movers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class GameControllerBenchmark {
+
+    GameController gc;
+    Point[] road;
+    final AtomicInteger movers = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        gc = new GameController(-1, 1000, true, true, ExecutionMode.TICK);
+        road = gc.getPositions('.');
+    }
+
+    /**
+     * A ghost moved by one benchmark thread
+     */
+    @State(Scope.Thread)
+    public static class Mover {
+
+        Ghost ghost;
+        SplittableRandom random;
+
+        @Setup(Level.Trial)
+        public void setUp(GameControllerBenchmark benchmark) {
+            int id = benchmark.movers.getAndIncrement();
+            Point start = benchmark.road[(id * 31) % benchmark.road.length];
+
+            ghost = new Ghost("mover" + id, benchmark.gc, 'G', start, 1, 2, 100);
+            benchmark.gc.attachExtraEntity(ghost);
+            ghost.start();
+            ghost.prepareSteps(id);
+
+            random = new SplittableRandom(id);
+        }
+    }
+
+    @Benchmark
+    public Point reportPosition(Mover mover) {
+        Point plan = mover.ghost.planStep();
+        if (plan == null)
+            return null; // boxed in by other movers
+
+        Point pos = gc.reportPosition(mover.ghost, plan);
+        mover.ghost.stepCommitted(pos);
+        return pos;
+    }
+
+    @Benchmark
+    public char cachedRoadSymbol(Mover mover) {
+        return gc.CachedRoadSymbol(road[mover.random.nextInt(road.length)]);
+    }
+
+    @Benchmark
+    public boolean isRoad(Mover mover) {
+        return gc.isRoad(road[mover.random.nextInt(road.length)]);
+    }
+
+    @Benchmark
+    public Point[] getPositions() {
+        return gc.getPositions('.');
+    }
+}
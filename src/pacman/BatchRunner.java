@@ -0,0 +1,317 @@
+package pacman;
+
+import pacman.active.Entity;
+import pacman.active.ExecutionMode;
+import pacman.active.Ghost;
+import pacman.active.Pacman;
+import pacman.passive.GameController;
+import pacman.passive.TickEngine;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static java.lang.System.out;
+
+/**
+ * Runs batches of independent games in parallel, for Monte Carlo statistics of win rates and game lengths.
+ * Every game has its own headless, quiet game controller in tick mode, advanced as fast as possible by its own tick
+ * engine, so games share no state and each one is reproducible from its seed. Games are spread over a pool of
+ * threads, one game per thread at a time.
+ */
+public class BatchRunner {
+
+    private static final int BLINK_SPEED = 500;
+    private static final int[] GHOST_SPEEDS = {125, 175, 250, 100};
+    private static final char[] GHOST_SYMBOLS = {'C', 'P', 'O', 'R'};
+    private static final String[] GHOST_NAMES = {"inky", "pinky", "clyde", "blinky"};
+
+    private final String boardPath;
+    private final int lives;
+    private final int attackDuration;
+    private final long maxTicks;
+    private final int threads;
+    private boolean pelletHunting = false;
+
+    /**
+     * Settings of the games of a batch
+     */
+    public static class Settings {
+        public final int ghosts;
+        public final int pacmanSpeed;
+        public final int slowdownFactor;
+
+        /**
+         * Initializes the settings of a batch
+         *
+         * @param ghosts         number of ghosts, the first four are the classic ones
+         * @param pacmanSpeed    milliseconds between two pacman moves
+         * @param slowdownFactor of the ghosts under attack
+         */
+        public Settings(int ghosts, int pacmanSpeed, int slowdownFactor) {
+            assert ghosts > 0;
+            assert pacmanSpeed > 0;
+            assert slowdownFactor > 0;
+
+            this.ghosts = ghosts;
+            this.pacmanSpeed = pacmanSpeed;
+            this.slowdownFactor = slowdownFactor;
+        }
+    }
+
+    /**
+     * Outcome of one game
+     */
+    private static class Outcome {
+        final boolean ended, won;
+        final int points;
+        final long ticks;
+
+        Outcome(boolean ended, boolean won, int points, long ticks) {
+            this.ended = ended;
+            this.won = won;
+            this.points = points;
+            this.ticks = ticks;
+        }
+    }
+
+    /**
+     * Aggregated results of a batch
+     */
+    public static class Report {
+        public final Settings settings;
+        public final int games;
+        public final int won;
+        public final int unfinished; // games stopped after the maximum number of ticks
+        public final double meanPoints;
+        public final long meanMillis, medianMillis, p95Millis; // game time of the games that ended
+        public final long elapsedMillis;
+
+        private Report(Settings settings, List<Outcome> outcomes, int tickMillis, long elapsedMillis) {
+            this.settings = settings;
+            this.games = outcomes.size();
+            this.elapsedMillis = elapsedMillis;
+
+            int won = 0, unfinished = 0;
+            long points = 0;
+            long[] lengths = new long[games];
+            int ended = 0;
+            for (Outcome outcome : outcomes) {
+                if (outcome.won)
+                    won++;
+                if (outcome.ended)
+                    lengths[ended++] = outcome.ticks * tickMillis;
+                else
+                    unfinished++;
+                points += outcome.points;
+            }
+
+            lengths = Arrays.copyOf(lengths, ended);
+            Arrays.sort(lengths);
+
+            this.won = won;
+            this.unfinished = unfinished;
+            this.meanPoints = games == 0 ? 0 : (double) points / games;
+            this.meanMillis = ended == 0 ? 0 : Arrays.stream(lengths).sum() / ended;
+            this.medianMillis = percentile(lengths, 0.5);
+            this.p95Millis = percentile(lengths, 0.95);
+        }
+
+        /**
+         * Value at a percentile of sorted values
+         *
+         * @param sorted     values, in ascending order
+         * @param percentile between 0 and 1
+         * @return value, 0 if there are no values
+         */
+        private static long percentile(long[] sorted, double percentile) {
+            if (sorted.length == 0)
+                return 0;
+            return sorted[(int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1)];
+        }
+
+        /**
+         * Fraction of the games pacman won
+         *
+         * @return win rate, between 0 and 1
+         */
+        public double winRate() {
+            return games == 0 ? 0 : (double) won / games;
+        }
+
+        /**
+         * Games run per second of real time
+         *
+         * @return throughput
+         */
+        public double gamesPerSecond() {
+            return elapsedMillis == 0 ? games * 1000.0 : games * 1000.0 / elapsedMillis;
+        }
+
+        /**
+         * Report header, for {@link #toString()} lines
+         *
+         * @return column names
+         */
+        public static String header() {
+            return String.format("%6s %6s %8s %6s %8s %8s %9s %9s %9s %10s %8s",
+                    "ghosts", "speed", "slowdown", "games", "win rate", "points",
+                    "mean(s)", "p50(s)", "p95(s)", "unfinished", "games/s");
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%6d %6d %8d %6d %7.1f%% %8.1f %9.1f %9.1f %9.1f %10d %8.1f",
+                    settings.ghosts, settings.pacmanSpeed, settings.slowdownFactor, games, winRate() * 100,
+                    meanPoints, meanMillis / 1000.0, medianMillis / 1000.0, p95Millis / 1000.0, unfinished,
+                    gamesPerSecond());
+        }
+    }
+
+    /**
+     * Initializes a new batch runner
+     *
+     * @param boardPath      board file of the games
+     * @param lives          pacman lives of each game
+     * @param attackDuration attack mode duration in milliseconds
+     * @param maxTicks       ticks after which a game that did not end is stopped
+     * @param threads        number of games run in parallel
+     */
+    public BatchRunner(String boardPath, int lives, int attackDuration, long maxTicks, int threads) {
+        assert boardPath != null;
+        assert lives > 0;
+        assert attackDuration > 0;
+        assert maxTicks > 0;
+        assert threads > 0;
+
+        this.boardPath = boardPath;
+        this.lives = lives;
+        this.attackDuration = attackDuration;
+        this.maxTicks = maxTicks;
+        this.threads = threads;
+    }
+
+    /**
+     * Makes the pacmans of the games hunt the closest pellet, see {@link GameController#setPelletHunting(boolean)}
+     *
+     * @param hunting true to hunt pellets
+     */
+    public void setPelletHunting(boolean hunting) {
+        pelletHunting = hunting;
+    }
+
+    /**
+     * Runs a batch of games with the same settings. Game i is played with seed + i.
+     *
+     * @param settings of the games
+     * @param games    number of games
+     * @param seed     of the first game
+     * @return aggregated results
+     */
+    public Report run(Settings settings, int games, long seed) {
+        assert settings != null;
+        assert games > 0;
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, games));
+        long started = System.currentTimeMillis();
+
+        try {
+            List<Future<Outcome>> futures = new ArrayList<>(games);
+            for (int i = 0; i < games; i++) {
+                long gameSeed = seed + i;
+                futures.add(pool.submit(() -> play(settings, gameSeed)));
+            }
+
+            List<Outcome> outcomes = new ArrayList<>(games);
+            for (Future<Outcome> future : futures)
+                outcomes.add(future.get());
+
+            return new Report(settings, outcomes, Game.TICK_MILLIS, System.currentTimeMillis() - started);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Batch interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Game failed: " + e.getCause(), e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs a batch of games for every combination of settings and prints the report of each one
+     *
+     * @param ghosts          numbers of ghosts
+     * @param pacmanSpeeds    pacman speeds
+     * @param slowdownFactors ghost slowdown factors
+     * @param games           number of games of each combination
+     * @param seed            of the first game of each combination
+     * @return reports, in the order they were printed
+     */
+    public List<Report> sweep(int[] ghosts, int[] pacmanSpeeds, int[] slowdownFactors, int games, long seed) {
+        List<Report> reports = new ArrayList<>();
+        long started = System.currentTimeMillis();
+        int total = 0;
+
+        out.println("Running " + games + " games per setting on " + threads + " threads, seed " + seed);
+        out.println(Report.header());
+        for (int g : ghosts)
+            for (int speed : pacmanSpeeds)
+                for (int slowdown : slowdownFactors) {
+                    Report report = run(new Settings(g, speed, slowdown), games, seed);
+                    out.println(report);
+                    reports.add(report);
+                    total += report.games;
+                }
+
+        long elapsed = Math.max(1, System.currentTimeMillis() - started);
+        out.println(String.format("%d games in %.1fs: %.1f games/s", total, elapsed / 1000.0, total * 1000.0 / elapsed));
+        return reports;
+    }
+
+    /**
+     * Plays one game
+     *
+     * @param settings of the game
+     * @param seed     of the game
+     * @return outcome
+     */
+    private Outcome play(Settings settings, long seed) {
+        GameController gc = new GameController(lives, attackDuration, false, true, ExecutionMode.TICK, boardPath, true);
+        gc.setPelletHunting(pelletHunting);
+
+        try {
+            Random random = new Random(seed);
+            ArrayList<Entity> entities = new ArrayList<>();
+
+            entities.add(new Pacman("pacman", gc, 'X', gc.getPositions('X')[0], settings.pacmanSpeed));
+            for (int i = 0; i < settings.ghosts; i++) {
+                if (i < GHOST_SYMBOLS.length) {
+                    entities.add(new Ghost(GHOST_NAMES[i], gc, GHOST_SYMBOLS[i], gc.getPositions(GHOST_SYMBOLS[i])[0],
+                            GHOST_SPEEDS[i], settings.slowdownFactor, BLINK_SPEED));
+                } else {
+                    Point[] freeSlots = gc.getPositions('.');
+                    entities.add(new Ghost("Generic Ghost " + i, gc, 'G', freeSlots[random.nextInt(freeSlots.length)],
+                            125 + random.nextInt(500 - 125 + 1), settings.slowdownFactor, BLINK_SPEED));
+                }
+            }
+
+            entities.forEach(gc::attachExtraEntity);
+            entities.forEach(Entity::start);
+
+            // games are already run in parallel, moves of a game are planned in the game thread
+            long ticks = new TickEngine(gc, seed, Game.TICK_MILLIS, 1, false).run(maxTicks);
+
+            if (gc.gameInProgress())
+                return new Outcome(false, false, gc.points(), ticks);
+            return new Outcome(true, gc.waitingForGameToEnd(), gc.points(), ticks);
+        } finally {
+            gc.metrics().unregister();
+        }
+    }
+}
@@ -1,144 +1,414 @@
 package pacman;
 
 import pacman.active.Entity;
-import pacman.active.Ghost;
-import pacman.active.Pacman;
+import pacman.active.ExecutionMode;
+import pacman.other.EventJournal;
+import pacman.other.EventLog;
+import pacman.other.MetricsReporter;
+import pacman.passive.GBoardView;
 import pacman.passive.GameController;
+import pacman.passive.JournalReplayer;
+import pacman.passive.MazeGenerator;
+import pacman.passive.TickEngine;
+import pacman.passive.Watchdog;
 import pt.ua.concurrent.CThread;
 
-import java.awt.*;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.List;
+import java.util.Random;
 
 import static java.lang.System.out;
 
 public class Game {
 
+    static final int TICK_MILLIS = 5;
+    private static final long BATCH_MAX_TICKS = 1_000_000; // games of a batch last at most 5000s of game time
+
+    // command line options
+    private static boolean headless = false;
+    private static ExecutionMode executionMode = ExecutionMode.PLATFORM;
+    private static long seed = System.nanoTime();
+    private static boolean seedGiven = false;
+    private static long maxTicks = Long.MAX_VALUE;
+    private static String metricsPath = null;
+    private static int metricsPeriod = 10;
+    private static int respawnDelay = 0;
+    private static String journalPath = null;
+    private static double replaySpeed = 10;
+    private static boolean verbose = false;
+    private static int fps = GBoardView.DEFAULT_FPS;
+    private static int hudLine = Integer.MIN_VALUE; // board default
+    private static String boardPath = null;
+    private static int mazeColumns = 0, mazeLines = 0;
+    private static int regions = 0;
+    private static boolean hunt = false;
+    private static boolean fair = false;
+    private static int watchdogPeriod = 0; // milliseconds, 0 without watchdog
+    private static int[] ghosts = {4}, pacmanSpeeds = {125}, slowdownFactors = {3};
+    private static int lives = 3;
+    private static int threads = Runtime.getRuntime().availableProcessors();
+    private static EventLog.Level logLevel = EventLog.Level.DEBUG;
+    private static ArrayList<EventLog.Category> mutedCategories = new ArrayList<>();
+    private static int duration = 0; // seconds, 0 for the scenario duration
+    private static int[] stressEntities = null, speedScales = {100};
+    private static String curvePath = null;
+
     /**
      * @param args the command line arguments
      */
     public static void main(String[] args) {
 
-        if (args.length != 1) {
+        if (args.length < 1) {
             printHelp();
             System.exit(1);
         }
 
-        int lives = 3;
-        int attackDuration = 5000;
-        int slowdownFactor = 3;
-        int blinkSpeed = 500;
-        int extraGhots = 0;
-        int extraPacmans = 0;
-        boolean endless = false;
-        ArrayList<Entity> entities = new ArrayList<>();
-
-        switch (args[0].charAt(0)) {
-            case '1': {
-                // normal mode
-                // no changes to default
-                break;
-            }
-            case '2': {
-                // aggressive mode. 100 lives, 16 ghosts
-                lives = 100;
-                extraGhots = 12;
-                attackDuration = 15000;
-                break;
-            }
-            case '3': {
-                // endless
-                endless = true;
-                break;
-            }
-            case '4': {
-                // crazy mode
-                lives = -1;
-                extraPacmans = 31;
-                extraGhots = 28;
-                endless = true;
-                break;
-            }
-            case '5': {
-                lives = -1;
-                endless = true;
-                extraPacmans = 127;
-
-                GameController gc = new GameController(lives, attackDuration, endless);
-                entities.add(new Pacman("pacman", gc, 'X', gc.getPositions('X')[0], 125));
-                entities.add(new Ghost("blinky", gc, 'R', gc.getPositions('R')[0], 100, slowdownFactor, blinkSpeed));
-                for (int i = 0; i < extraPacmans; i++) {
-                    Pacman pc = new Pacman("Pacman nr: " + i,
-                            gc,
-                            'X',
-                            gc.getPositions('X')[0],
-                            ThreadLocalRandom.current().nextInt(80, 90 + 1));
-
-                    entities.add(pc);
+        // replay <journal> [options], batch <games> [options], scenario <file> [options], stress <file> [options]
+        boolean replay = args[0].equals("replay");
+        boolean batch = args[0].equals("batch");
+        boolean scenarioFile = args[0].equals("scenario");
+        boolean stress = args[0].equals("stress");
+        boolean command = replay || batch || scenarioFile || stress;
+        if (command && args.length < 2) {
+            printHelp();
+            System.exit(1);
+        }
+
+        for (int i = command ? 2 : 1; i < args.length; i++) {
+            String option = args[i];
+            try {
+                if (option.equals("--headless")) {
+                    headless = true;
+                } else if (option.equals("--virtual")) {
+                    executionMode = ExecutionMode.VIRTUAL;
+                } else if (option.equals("--tick")) {
+                    executionMode = ExecutionMode.TICK;
+                } else if (option.startsWith("--seed=")) {
+                    seed = Long.parseLong(option.substring("--seed=".length()));
+                    seedGiven = true;
+                } else if (option.startsWith("--max-ticks=")) {
+                    maxTicks = Long.parseLong(option.substring("--max-ticks=".length()));
+                } else if (option.startsWith("--metrics=")) {
+                    metricsPath = option.substring("--metrics=".length());
+                } else if (option.startsWith("--metrics-period=")) {
+                    metricsPeriod = Integer.parseInt(option.substring("--metrics-period=".length()));
+                } else if (option.startsWith("--respawn-delay=")) {
+                    respawnDelay = Integer.parseInt(option.substring("--respawn-delay=".length()));
+                } else if (option.startsWith("--journal=")) {
+                    journalPath = option.substring("--journal=".length());
+                } else if (option.startsWith("--replay-speed=")) {
+                    replaySpeed = Double.parseDouble(option.substring("--replay-speed=".length()));
+                } else if (option.startsWith("--board=")) {
+                    boardPath = option.substring("--board=".length());
+                } else if (option.startsWith("--maze=")) {
+                    String[] size = option.substring("--maze=".length()).split("x");
+                    if (size.length != 2)
+                        throw new NumberFormatException(option);
+                    mazeColumns = Integer.parseInt(size[0]);
+                    mazeLines = Integer.parseInt(size[1]);
+                } else if (option.startsWith("--regions=")) {
+                    regions = Integer.parseInt(option.substring("--regions=".length()));
+                } else if (option.equals("--fair")) {
+                    fair = true;
+                } else if (option.equals("--watchdog")) {
+                    watchdogPeriod = 1000;
+                } else if (option.startsWith("--watchdog=")) {
+                    watchdogPeriod = Integer.parseInt(option.substring("--watchdog=".length()));
+                    if (watchdogPeriod <= 0)
+                        throw new NumberFormatException(option);
+                } else if (option.equals("--hunt")) {
+                    hunt = true;
+                } else if (option.startsWith("--hud-line=")) {
+                    hudLine = Integer.parseInt(option.substring("--hud-line=".length()));
+                } else if (option.startsWith("--fps=")) {
+                    fps = Integer.parseInt(option.substring("--fps=".length()));
+                } else if (option.startsWith("--ghosts=")) {
+                    ghosts = parseList(option.substring("--ghosts=".length()));
+                } else if (option.startsWith("--pacman-speed=")) {
+                    pacmanSpeeds = parseList(option.substring("--pacman-speed=".length()));
+                } else if (option.startsWith("--slowdown=")) {
+                    slowdownFactors = parseList(option.substring("--slowdown=".length()));
+                } else if (option.startsWith("--lives=")) {
+                    lives = Integer.parseInt(option.substring("--lives=".length()));
+                } else if (option.startsWith("--threads=")) {
+                    threads = Integer.parseInt(option.substring("--threads=".length()));
+                } else if (option.startsWith("--duration=")) {
+                    duration = Integer.parseInt(option.substring("--duration=".length()));
+                } else if (option.startsWith("--entities=")) {
+                    stressEntities = parseList(option.substring("--entities=".length()), 0);
+                } else if (option.startsWith("--speed-scale=")) {
+                    speedScales = parseList(option.substring("--speed-scale=".length()));
+                } else if (option.startsWith("--curve=")) {
+                    curvePath = option.substring("--curve=".length());
+                } else if (option.startsWith("--log-level=")) {
+                    logLevel = EventLog.Level.valueOf(option.substring("--log-level=".length()).toUpperCase());
+                } else if (option.startsWith("--log-mute=")) {
+                    for (String category : option.substring("--log-mute=".length()).split(","))
+                        mutedCategories.add(EventLog.Category.valueOf(category.trim().toUpperCase()));
+                } else if (option.equals("--verbose")) {
+                    verbose = true;
+                } else {
+                    printHelp();
+                    System.exit(1);
                 }
+            } catch (NumberFormatException e) {
+                out.println("Invalid number in option " + option);
+                System.exit(1);
+            } catch (IllegalArgumentException e) {
+                out.println("Invalid value in option " + option);
+                System.exit(1);
+            }
+        }
 
-                entities.forEach(gc::attachExtraEntity);
-                entities.forEach(CThread::start);
+        // the game scenario: a preset or a scenario file, command line options take precedence over it
+        Scenario scenario = null;
+        if (scenarioFile || stress)
+            scenario = loadScenario(args[1]);
+        else if (!command && args[0].length() == 1)
+            scenario = Scenario.preset(args[0].charAt(0));
 
-                gc.waitingForGameToEnd();
+        if (scenario == null && !command) {
+            printHelp();
+            System.exit(1);
+        }
+        if (scenario != null) {
+            if (!seedGiven && scenario.seed != null)
+                seed = scenario.seed;
+            if (boardPath == null && mazeColumns == 0)
+                boardPath = scenario.board;
+            if (duration == 0)
+                duration = scenario.duration;
+        }
 
-                break;
-            }
-            default: {
-                printHelp();
-                System.exit(1);
-            }
+        if (mazeColumns > 0)
+            generateMaze();
+        if (boardPath == null)
+            boardPath = GameController.DEFAULT_BOARD;
+
+        if (replay) {
+            JournalReplayer replayer = new JournalReplayer(args[1], boardPath, headless);
+            replayer.replay(replaySpeed, verbose);
+            return;
+        }
+
+        if (batch) {
+            batch(args[1]);
+            return;
+        }
+
+        if (!executionMode.isSupported()) {
+            out.println("Virtual threads are not supported by this Java runtime, using platform threads");
+            executionMode = ExecutionMode.PLATFORM;
+        }
+
+        if (stress) {
+            stress(scenario);
+            return;
+        }
+
+        GameController gc = new GameController(scenario.lives, scenario.attackDuration, scenario.endless, headless,
+                executionMode, boardPath);
+        play(gc, scenario.createEntities(gc, new Random(seed)));
+    }
+
+    /**
+     * Attaches and starts the entities and waits for the game to end, or stops it after the --duration seconds.
+     * In tick mode the game is advanced by a tick engine in the calling thread.
+     *
+     * @param gc       game controller
+     * @param entities to play
+     */
+    private static void play(GameController gc, List<Entity> entities) {
+        gc.log().setLevel(logLevel);
+        mutedCategories.forEach(category -> gc.log().mute(category, true));
+        gc.setRespawnDelay(respawnDelay);
+        if (regions > 0)
+            gc.useRegions(regions);
+        else if (fair)
+            gc.useFairAdmission();
+        gc.setPelletHunting(hunt);
+        gc.setFrameRate(fps);
+        if (hudLine != Integer.MIN_VALUE)
+            gc.setHudLine(hudLine);
+
+        EventJournal journal = null;
+        if (journalPath != null)
+            journal = gc.startJournal(journalPath);
+
+        MetricsReporter reporter = null;
+        if (metricsPath != null) {
+            reporter = new MetricsReporter(gc.metrics(), metricsPath, metricsPeriod * 1000);
+            reporter.start();
+        }
+
+        Watchdog watchdog = null;
+        if (watchdogPeriod > 0) {
+            watchdog = new Watchdog(gc, watchdogPeriod);
+            watchdog.start();
         }
 
-        GameController gc = new GameController(lives, attackDuration, endless);
+        try {
+            entities.forEach(gc::attachExtraEntity);
+            entities.forEach(Entity::start);
 
+            if (gc.executionMode() == ExecutionMode.TICK) {
+                TickEngine engine = new TickEngine(gc,
+                        seed,
+                        TICK_MILLIS,
+                        Runtime.getRuntime().availableProcessors(),
+                        !headless);
+                long ticks = engine.run(duration > 0 ? Math.min(maxTicks, duration * 1000L / TICK_MILLIS) : maxTicks);
+                gc.log().flush();
 
-        entities.add(new Pacman("pacman", gc, 'X', gc.getPositions('X')[0], 125));
+                if (gc.gameInProgress()) {
+                    out.println("Simulation stopped after " + ticks + " ticks");
+                    return;
+                }
+                out.println("Simulated " + ticks + " ticks");
+            } else if (duration > 0) {
+                long deadline = System.currentTimeMillis() + duration * 1000L;
+                while (gc.gameInProgress() && System.currentTimeMillis() < deadline)
+                    CThread.pause(10);
 
-        // enemies
-        entities.add(new Ghost("inky", gc, 'C', gc.getPositions('C')[0], 125, slowdownFactor, blinkSpeed));
-        entities.add(new Ghost("pinky", gc, 'P', gc.getPositions('P')[0], 175, slowdownFactor, blinkSpeed));
-        entities.add(new Ghost("clyde", gc, 'O', gc.getPositions('O')[0], 250, slowdownFactor, blinkSpeed));
-        entities.add(new Ghost("blinky", gc, 'R', gc.getPositions('R')[0], 100, slowdownFactor, blinkSpeed));
+                if (gc.stopGame()) {
+                    gc.waitingForGameToEnd();
+                    out.println("Game stopped after " + duration + "s");
+                    return;
+                }
+            }
 
-        for (int i = 0; i < extraGhots; i++) {
-            Point[] freeSlots = gc.getPositions('.');
-            Point pos = freeSlots[ThreadLocalRandom.current().nextInt(0, freeSlots.length)];
-            Ghost ghost = new Ghost("Generic Ghost " + i,
-                    gc,
-                    'G', // generic ghost
-                    pos,
-                    ThreadLocalRandom.current().nextInt(125, 500 + 1),
-                    slowdownFactor,
-                    blinkSpeed);
+            boolean won = gc.waitingForGameToEnd();
+            out.println("Game Ended! " + "Pacman as " + (won ? "won!" : "lost"));
+        } finally {
+            if (watchdog != null)
+                watchdog.finish();
+            if (reporter != null)
+                reporter.finish();
+            if (journal != null)
+                journal.close();
+        }
+    }
 
-            entities.add(ghost);
+    /**
+     * Runs a batch of headless tick mode games for every combination of the --ghosts, --pacman-speed and --slowdown
+     * options and prints their statistics
+     *
+     * @param games number of games of each combination
+     */
+    private static void batch(String games) {
+        int n;
+        try {
+            n = Integer.parseInt(games);
+        } catch (NumberFormatException e) {
+            n = 0;
+        }
+        if (n <= 0 || lives <= 0 || threads <= 0) {
+            out.println("Batches need a positive number of games, lives and threads");
+            System.exit(1);
         }
 
-        for (int i = 0; i < extraPacmans; i++) {
-            Pacman pc = new Pacman("Pacman nr: " + i,
-                    gc,
-                    'X',
-                    gc.getPositions('X')[0],
-                    ThreadLocalRandom.current().nextInt(80, 90 + 1));
+        long ticks = maxTicks == Long.MAX_VALUE ? BATCH_MAX_TICKS : maxTicks;
+        int attackDuration = 5000; // as in the normal mode
+        BatchRunner runner = new BatchRunner(boardPath, lives, attackDuration, ticks, threads);
+        runner.setPelletHunting(hunt);
+        runner.sweep(ghosts, pacmanSpeeds, slowdownFactors, n, seed);
+    }
 
-            entities.add(pc);
+    /**
+     * Plays the scenario for the --duration seconds, 10 if not set, for every combination of the --entities and
+     * --speed-scale options and prints the scaling curve, also written to the --curve file
+     *
+     * @param scenario to stress
+     */
+    private static void stress(Scenario scenario) {
+        int[] entities = stressEntities == null ? new int[]{scenario.extraEntities()} : stressEntities;
+        StressRunner runner = new StressRunner(scenario, boardPath, executionMode, seed, duration > 0 ? duration : 10);
+        runner.setFairAdmission(fair);
+
+        try {
+            runner.sweep(entities, speedScales, curvePath);
+        } catch (IOException e) {
+            out.println("Unable to write the curve: " + e.getMessage());
+            System.exit(1);
         }
+    }
 
-        entities.forEach(gc::attachExtraEntity);
-        entities.forEach(CThread::start);
+    /**
+     * Reads the scenario file of the scenario and stress commands
+     *
+     * @param path of the scenario file
+     * @return scenario
+     */
+    private static Scenario loadScenario(String path) {
+        try {
+            return Scenario.load(path);
+        } catch (IOException | IllegalArgumentException e) {
+            out.println("Unable to read the scenario: " + e.getMessage());
+            System.exit(1);
+            return null;
+        }
+    }
 
-        boolean won = gc.waitingForGameToEnd();
-        out.println("Game Ended! " + "Pacman as " + (won ? "won!" : "lost"));
+    /**
+     * Parses a comma separated list of positive numbers
+     *
+     * @param list to parse
+     * @return numbers
+     */
+    private static int[] parseList(String list) {
+        return parseList(list, 1);
+    }
+
+    /**
+     * Parses a comma separated list of numbers
+     *
+     * @param list to parse
+     * @param min  lowest valid number
+     * @return numbers
+     */
+    private static int[] parseList(String list, int min) {
+        String[] items = list.split(",");
+        int[] numbers = new int[items.length];
+        for (int i = 0; i < items.length; i++) {
+            numbers[i] = Integer.parseInt(items[i].trim());
+            if (numbers[i] < min)
+                throw new NumberFormatException(list);
+        }
+        return numbers;
+    }
 
+    /**
+     * Generates the maze of the --maze option, from the game seed, into the --board file or a temporary file
+     */
+    private static void generateMaze() {
+        try {
+            if (boardPath == null) {
+                File file = File.createTempFile("maze-" + mazeColumns + "x" + mazeLines + "-", ".txt");
+                file.deleteOnExit();
+                boardPath = file.getPath();
+            }
 
+            long started = System.currentTimeMillis();
+            new MazeGenerator(mazeColumns, mazeLines, seed).generate(boardPath);
+            out.println("Generated a " + mazeColumns + "x" + mazeLines + " maze with seed " + seed + " in "
+                    + (System.currentTimeMillis() - started) + "ms: " + boardPath);
+        } catch (IOException | IllegalArgumentException e) {
+            out.println("Unable to generate the maze: " + e.getMessage());
+            System.exit(1);
+        }
     }
 
     private static void printHelp() {
         out.println("PCOO Pacman Simulation 2016/2017");
         out.println("Guilherme Cardoso <gjc@ua.pt>");
         out.println("");
-        out.println("Usage: java -ea -jar Pacman.jar <preset>");
+        out.println("Usage: java -ea -jar Pacman.jar <preset> [options]");
+        out.println("       java -ea -jar Pacman.jar replay <journal> [--headless] [--replay-speed=<x>] [--verbose]");
+        out.println("       java -ea -jar Pacman.jar batch <games> [--ghosts=<n,...>] [--pacman-speed=<ms,...>] [--slowdown=<n,...>] [options]");
+        out.println("       java -ea -jar Pacman.jar scenario <file> [options]");
+        out.println("       java -ea -jar Pacman.jar stress <file> [--entities=<n,...>] [--speed-scale=<percent,...>] [--curve=<file>] [options]");
         out.println("");
         out.println("Available presets:");
         out.println("");
@@ -155,6 +425,42 @@ public class Game {
         out.println("    Same as 3, but with more entities");
         out.println("");
         out.println("5:  Developer mode. 128 pacmans killing one Ghost. Tests interrupts and concurrency.");
+        out.println("");
+        out.println("6:  Swarm mode: infinite lives, 10000 pacmans, 32 ghosts");
+        out.println("    Meant to be run headless on virtual threads");
+        out.println("");
+        out.println("Options:");
+        out.println("");
+        out.println("--headless  Runs the simulation on the in-memory board only, without GBoard rendering.");
+        out.println("--virtual   Runs each entity on a virtual thread instead of a platform thread (Java 21+).");
+        out.println("--tick      Runs the entities with a deterministic tick engine instead of threads.");
+        out.println("--seed=<n>  Seed of the game random choices. Tick mode games are reproducible from it.");
+        out.println("--max-ticks=<n>  Stops a tick mode game after n ticks (" + TICK_MILLIS + "ms each).");
+        out.println("--metrics=<file>  Periodically appends the game metrics to a CSV file (JSON lines if <file> ends in .json).");
+        out.println("--metrics-period=<n>  Seconds between two metrics dumps, 10 by default.");
+        out.println("--respawn-delay=<n>  Milliseconds between the kill of an entity and its respawn, 0 by default.");
+        out.println("--board=<file>  Plays on another board file, with two portals '?', their destinations '!' and the entity starts.");
+        out.println("--maze=<columns>x<lines>  Plays on a maze generated from the seed, written to the --board file if given.");
+        out.println("--regions=<n>  Splits the board in n regions owned by actors that run the moves, instead of cell locks.");
+        out.println("--fair  Admits the moves to their cells in arrival order, bounding the tail of the move wait.");
+        out.println("--watchdog[=<ms>]  Checks every second, or ms, for starved, stalled and deadlocked entities.");
+        out.println("--hunt  Pacmans head for the closest point or bonus instead of walking randomly (boards up to 1024 road cells).");
+        out.println("--hud-line=<n>  Board line where the points are drawn, the second to last by default, -1 to hide them.");
+        out.println("--fps=<n>  Frames per second of the GBoard rendering, " + GBoardView.DEFAULT_FPS + " by default.");
+        out.println("--journal=<file>  Records every move, collision, kill, spawn, point and bonus to a binary journal.");
+        out.println("--replay-speed=<x>  Replays a journal x times faster than real time, 10 by default, 0 as fast as possible.");
+        out.println("--verbose  Prints every replayed journal record.");
+        out.println("--log-level=<level>  Least level of the game messages printed: debug (default), info, warn or off.");
+        out.println("--log-mute=<category,...>  Game message categories not printed: game, kill, spawn, points, entity, watchdog.");
+        out.println("--ghosts=<n,...>  Numbers of ghosts of the batch games, 4 by default.");
+        out.println("--pacman-speed=<ms,...>  Milliseconds between two pacman moves in the batch games, 125 by default.");
+        out.println("--slowdown=<n,...>  Slowdown factors of the ghosts under attack in the batch games, 3 by default.");
+        out.println("--lives=<n>  Pacman lives in the batch games, 3 by default.");
+        out.println("--threads=<n>  Batch games run in parallel, the number of cores by default.");
+        out.println("--duration=<s>  Stops the game after s seconds of game time, the scenario duration by default (10 when stressing).");
+        out.println("--entities=<n,...>  Extra entities of the stress runs, split between pacmans and ghosts as in the scenario.");
+        out.println("--speed-scale=<percent,...>  Speeds of the stress runs, in percent of the scenario speeds, 100 by default.");
+        out.println("--curve=<file>  Also writes the stress curve to a CSV file.");
     }
 
 }
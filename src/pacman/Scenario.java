@@ -0,0 +1,397 @@
+package pacman;
+
+import pacman.active.Entity;
+import pacman.active.Ghost;
+import pacman.active.Pacman;
+import pacman.passive.GameController;
+
+import java.awt.*;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * Description of a game: board, lives, attack mode, entity mix and speed distributions, seed and duration.
+ * Scenarios are read from properties files, every key being optional:
+ * <pre>
+ * board=./resources/board.txt   board file, the default board if missing
+ * seed=42                       seed of the game, the current time if missing
+ * duration=60                   seconds of game time after which the game is stopped, 0 to play until it ends
+ * lives=3                       pacman lives, -1 for infinite lives
+ * endless=false                 if the game goes on once every point is collected
+ * attack-duration=5000          attack mode duration in milliseconds
+ * speed-scale=100               percentage applied to every entity speed, below 100 entities move faster
+ * pacman.speed=125              milliseconds between two moves of the first pacman
+ * pacmans=0                     number of extra pacmans
+ * pacmans.speed=80-90           milliseconds between two moves of the extra pacmans, uniformly drawn in a range
+ * ghosts.classic=inky,pinky,clyde,blinky   classic ghosts, each with its own symbol, start and speed
+ * ghosts=0                      number of generic ghosts, started on random points
+ * ghosts.speed=125-500          milliseconds between two moves of the generic ghosts, uniformly drawn in a range
+ * ghosts.slowdown=3             slowdown factor of the ghosts under attack
+ * ghosts.blink=500              blink period of the ghosts under attack, in milliseconds
+ * </pre>
+ * The presets of the game are built-in scenarios.
+ */
+public class Scenario {
+
+    private static final String[] KEYS = {"board", "seed", "duration", "lives", "endless", "attack-duration",
+            "speed-scale", "pacman.speed", "pacmans", "pacmans.speed", "ghosts.classic", "ghosts", "ghosts.speed",
+            "ghosts.slowdown", "ghosts.blink"};
+    private static final String[] CLASSIC_NAMES = {"inky", "pinky", "clyde", "blinky"};
+    private static final char[] CLASSIC_SYMBOLS = {'C', 'P', 'O', 'R'};
+    private static final int[] CLASSIC_SPEEDS = {125, 175, 250, 100};
+
+    public final String name;
+    public final String board; // null for the default board
+    public final Long seed; // null for no fixed seed
+    public final int duration;
+    public final int lives;
+    public final boolean endless;
+    public final int attackDuration;
+    public final int speedScale;
+    public final int pacmanSpeed;
+    public final int pacmans;
+    public final Range pacmanSpeeds;
+    public final String[] classicGhosts;
+    public final int ghosts;
+    public final Range ghostSpeeds;
+    public final int slowdownFactor;
+    public final int blinkSpeed;
+    private final Properties properties;
+
+    /**
+     * Inclusive range of speeds, drawn uniformly
+     */
+    public static class Range {
+        public final int min, max;
+
+        /**
+         * Initializes a range
+         *
+         * @param min lowest value
+         * @param max highest value
+         */
+        Range(int min, int max) {
+            assert min > 0 && min <= max;
+
+            this.min = min;
+            this.max = max;
+        }
+
+        /**
+         * Parses a range, "min-max" or a single value
+         *
+         * @param value to parse
+         * @return range
+         */
+        static Range parse(String value) {
+            String[] bounds = value.split("-");
+            if (bounds.length > 2)
+                throw new NumberFormatException(value);
+
+            int min = Integer.parseInt(bounds[0].trim());
+            int max = bounds.length == 1 ? min : Integer.parseInt(bounds[1].trim());
+            if (min <= 0 || max < min)
+                throw new NumberFormatException(value);
+
+            return new Range(min, max);
+        }
+
+        /**
+         * Draws a value of the range. Always draws from the random source, even for a single value, so the
+         * following draws do not depend on the width of the range.
+         *
+         * @param random source
+         * @return value between min and max
+         */
+        int draw(Random random) {
+            return min + random.nextInt(max - min + 1);
+        }
+
+        @Override
+        public String toString() {
+            return min == max ? Integer.toString(min) : min + "-" + max;
+        }
+    }
+
+    /**
+     * Initializes a scenario from its properties, with the defaults of the missing ones
+     *
+     * @param name       of the scenario
+     * @param properties of the scenario
+     * @throws IllegalArgumentException on unknown keys and invalid values
+     */
+    Scenario(String name, Properties properties) {
+        assert name != null;
+        assert properties != null;
+
+        for (String key : properties.stringPropertyNames())
+            if (!Arrays.asList(KEYS).contains(key))
+                throw new IllegalArgumentException("Unknown scenario key " + key);
+
+        this.name = name;
+        this.properties = properties;
+
+        board = properties.getProperty("board");
+        seed = properties.getProperty("seed") == null ? null : parseLong(properties, "seed");
+        duration = number(properties, "duration", 0, 0);
+        lives = number(properties, "lives", 3, -1);
+        endless = Boolean.parseBoolean(properties.getProperty("endless", "false").trim());
+        attackDuration = number(properties, "attack-duration", 5000, 1);
+        speedScale = number(properties, "speed-scale", 100, 1);
+        pacmanSpeed = number(properties, "pacman.speed", 125, 1);
+        pacmans = number(properties, "pacmans", 0, 0);
+        pacmanSpeeds = range(properties, "pacmans.speed", "80-90");
+        classicGhosts = classicGhosts(properties.getProperty("ghosts.classic", String.join(",", CLASSIC_NAMES)));
+        ghosts = number(properties, "ghosts", 0, 0);
+        ghostSpeeds = range(properties, "ghosts.speed", "125-500");
+        slowdownFactor = number(properties, "ghosts.slowdown", 3, 1);
+        blinkSpeed = number(properties, "ghosts.blink", 500, 1);
+
+        if (lives == 0)
+            throw new IllegalArgumentException("Invalid scenario value lives=0");
+    }
+
+    /**
+     * Reads a scenario file
+     *
+     * @param path of the properties file
+     * @return scenario
+     * @throws IOException              if the file cannot be read
+     * @throws IllegalArgumentException on unknown keys and invalid values
+     */
+    public static Scenario load(String path) throws IOException {
+        assert path != null;
+
+        Properties properties = new Properties();
+        try (Reader reader = new FileReader(path)) {
+            properties.load(reader);
+        }
+
+        return new Scenario(path, properties);
+    }
+
+    /**
+     * Built-in scenario of a game preset
+     *
+     * @param preset number of the preset, '1' to '6'
+     * @return scenario, null for an unknown preset
+     */
+    public static Scenario preset(char preset) {
+        Properties properties = new Properties();
+
+        switch (preset) {
+            case '1':
+                // normal mode, no changes to default
+                break;
+            case '2':
+                // aggressive mode. 100 lives, 16 ghosts
+                properties.setProperty("lives", "100");
+                properties.setProperty("ghosts", "12");
+                properties.setProperty("attack-duration", "15000");
+                break;
+            case '3':
+                // endless
+                properties.setProperty("endless", "true");
+                break;
+            case '4':
+                // crazy mode
+                properties.setProperty("lives", "-1");
+                properties.setProperty("endless", "true");
+                properties.setProperty("pacmans", "31");
+                properties.setProperty("ghosts", "28");
+                break;
+            case '5':
+                // developer mode, pacmans killing one ghost
+                properties.setProperty("lives", "-1");
+                properties.setProperty("endless", "true");
+                properties.setProperty("pacmans", "127");
+                properties.setProperty("ghosts.classic", "blinky");
+                break;
+            case '6':
+                // swarm mode
+                properties.setProperty("lives", "-1");
+                properties.setProperty("endless", "true");
+                properties.setProperty("pacmans", "9999");
+                properties.setProperty("ghosts", "28");
+                break;
+            default:
+                return null;
+        }
+
+        return new Scenario("preset " + preset, properties);
+    }
+
+    /**
+     * Same scenario with another number of extra entities and speed scale. The extra entities are split between
+     * pacmans and generic ghosts in the proportion of this scenario, all pacmans if it has none.
+     *
+     * @param entities   number of extra entities
+     * @param speedScale percentage applied to every entity speed
+     * @return scaled scenario
+     */
+    public Scenario scaled(int entities, int speedScale) {
+        assert entities >= 0;
+        assert speedScale > 0;
+
+        int extra = pacmans + ghosts;
+        int scaledPacmans = extra == 0 ? entities : (int) Math.round((double) entities * pacmans / extra);
+
+        Properties scaled = new Properties();
+        scaled.putAll(properties);
+        scaled.setProperty("pacmans", Integer.toString(scaledPacmans));
+        scaled.setProperty("ghosts", Integer.toString(entities - scaledPacmans));
+        scaled.setProperty("speed-scale", Integer.toString(speedScale));
+
+        return new Scenario(name, scaled);
+    }
+
+    /**
+     * Number of extra entities, pacmans and generic ghosts
+     *
+     * @return extra entities
+     */
+    public int extraEntities() {
+        return pacmans + ghosts;
+    }
+
+    /**
+     * Creates the entities of the scenario: the first pacman, the classic ghosts, the generic ghosts on random points
+     * and the extra pacmans, in this order. The same random source always creates the same entities.
+     *
+     * @param gc     game controller of the entities
+     * @param random source of the positions and speeds
+     * @return entities, not attached yet
+     */
+    public List<Entity> createEntities(GameController gc, Random random) {
+        assert gc != null;
+        assert random != null;
+
+        ArrayList<Entity> entities = new ArrayList<>();
+        Point pacmanStart = gc.getPositions('X')[0];
+
+        entities.add(new Pacman("pacman", gc, 'X', pacmanStart, scale(pacmanSpeed)));
+
+        // enemies
+        for (String ghost : classicGhosts) {
+            int i = Arrays.asList(CLASSIC_NAMES).indexOf(ghost);
+            entities.add(new Ghost(ghost, gc, CLASSIC_SYMBOLS[i], gc.getPositions(CLASSIC_SYMBOLS[i])[0],
+                    scale(CLASSIC_SPEEDS[i]), slowdownFactor, blinkSpeed));
+        }
+
+        for (int i = 0; i < ghosts; i++) {
+            Point[] freeSlots = gc.getPositions('.');
+            Point pos = freeSlots[random.nextInt(freeSlots.length)];
+            entities.add(new Ghost("Generic Ghost " + i,
+                    gc,
+                    'G', // generic ghost
+                    pos,
+                    scale(ghostSpeeds.draw(random)),
+                    slowdownFactor,
+                    blinkSpeed));
+        }
+
+        for (int i = 0; i < pacmans; i++)
+            entities.add(new Pacman("Pacman nr: " + i, gc, 'X', pacmanStart, scale(pacmanSpeeds.draw(random))));
+
+        return entities;
+    }
+
+    /**
+     * Applies the speed scale to a speed
+     *
+     * @param speed milliseconds between two moves
+     * @return scaled speed, at least 1
+     */
+    private int scale(int speed) {
+        return Math.max(1, (int) ((long) speed * speedScale / 100));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %s lives, %s, %d pacmans (%s ms), ghosts %s + %d generic (%s ms), speed %d%%",
+                name, lives < 0 ? "infinite" : Integer.toString(lives), endless ? "endless" : "ends on all points",
+                pacmans + 1, pacmanSpeeds, String.join(",", classicGhosts), ghosts, ghostSpeeds, speedScale);
+    }
+
+    /**
+     * Parses the classic ghosts
+     *
+     * @param value comma separated names, may be empty
+     * @return names
+     */
+    private static String[] classicGhosts(String value) {
+        if (value.trim().isEmpty())
+            return new String[0];
+
+        String[] names = value.split(",");
+        for (int i = 0; i < names.length; i++) {
+            names[i] = names[i].trim().toLowerCase();
+            if (!Arrays.asList(CLASSIC_NAMES).contains(names[i]))
+                throw new IllegalArgumentException("Unknown classic ghost " + names[i]);
+        }
+        return names;
+    }
+
+    /**
+     * Parses a number property
+     *
+     * @param properties   of the scenario
+     * @param key          of the property
+     * @param defaultValue if missing
+     * @param min          lowest valid value
+     * @return value
+     */
+    private static int number(Properties properties, String key, int defaultValue, int min) {
+        String value = properties.getProperty(key);
+        if (value == null)
+            return defaultValue;
+
+        try {
+            int number = Integer.parseInt(value.trim());
+            if (number < min)
+                throw new NumberFormatException(value);
+            return number;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid scenario value " + key + "=" + value);
+        }
+    }
+
+    /**
+     * Parses a long property
+     *
+     * @param properties of the scenario
+     * @param key        of the property, present
+     * @return value
+     */
+    private static long parseLong(Properties properties, String key) {
+        String value = properties.getProperty(key);
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid scenario value " + key + "=" + value);
+        }
+    }
+
+    /**
+     * Parses a range property
+     *
+     * @param properties   of the scenario
+     * @param key          of the property
+     * @param defaultValue if missing
+     * @return range
+     */
+    private static Range range(Properties properties, String key, String defaultValue) {
+        String value = properties.getProperty(key, defaultValue);
+        try {
+            return Range.parse(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid scenario value " + key + "=" + value);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package pacman;
+
+import pacman.active.Entity;
+import pacman.active.ExecutionMode;
+import pacman.other.Metrics;
+import pacman.passive.GameController;
+import pacman.passive.TickEngine;
+import pt.ua.concurrent.CThread;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static java.lang.System.out;
+
+/**
+ * Plays a scenario for a fixed time with a growing number of entities and speeds, and measures how the game scales:
+ * move throughput, and the time moves wait for their cells, for each point of the sweep. Every point is a new quiet,
+ * headless game, played with the execution mode of the game, so the curve measures the threads, the locks and the
+ * move protocol actually used.
+ */
+public class StressRunner {
+
+    private static final int POLL_PAUSE = 10; // milliseconds between two checks of the end of a timed game
+
+    private final Scenario scenario;
+    private final String boardPath;
+    private final ExecutionMode executionMode;
+    private final long seed;
+    private final int seconds;
+    private boolean fairAdmission = false;
+
+    /**
+     * Measured point of the curve
+     */
+    public static class Sample {
+        public final int entities;
+        public final int speedScale;
+        public final int pacmans, ghosts;
+        public final long elapsedMillis; // wall time of the game
+        public final long moves;
+        public final long moveWaitMeanNanos, moveWaitP99Nanos;
+        public final long kills, spawns;
+
+        private Sample(Scenario scenario, int entities, long elapsedMillis, Metrics metrics) {
+            this.entities = entities;
+            this.speedScale = scenario.speedScale;
+            this.pacmans = scenario.pacmans + 1;
+            this.ghosts = scenario.classicGhosts.length + scenario.ghosts;
+            this.elapsedMillis = elapsedMillis;
+            this.moves = metrics.getPacmanMoves() + metrics.getGhostMoves();
+            this.moveWaitMeanNanos = metrics.getMoveWaitMeanNanos();
+            this.moveWaitP99Nanos = metrics.getMoveWaitP99Nanos();
+            this.kills = metrics.getPacmanKills() + metrics.getGhostKills();
+            this.spawns = metrics.getSpawns();
+        }
+
+        /**
+         * Moves per second of wall time
+         *
+         * @return throughput
+         */
+        public double movesPerSecond() {
+            return elapsedMillis == 0 ? 0 : moves * 1000.0 / elapsedMillis;
+        }
+
+        /**
+         * Curve header, for {@link #toString()} lines
+         *
+         * @return column names
+         */
+        public static String header() {
+            return String.format("%8s %6s %7s %6s %8s %10s %10s %12s %11s %7s",
+                    "entities", "speed", "pacmans", "ghosts", "time(s)", "moves", "moves/s",
+                    "wait mean(us)", "wait p99(us)", "kills");
+        }
+
+        /**
+         * CSV header, for {@link #toCsv()} lines
+         *
+         * @return column names
+         */
+        public static String csvHeader() {
+            return "entities,speedScale,pacmans,ghosts,elapsedMillis,moves,movesPerSecond,moveWaitMeanNanos,"
+                    + "moveWaitP99Nanos,kills,spawns";
+        }
+
+        /**
+         * CSV line of the sample
+         *
+         * @return values
+         */
+        public String toCsv() {
+            return String.format("%d,%d,%d,%d,%d,%d,%.1f,%d,%d,%d,%d", entities, speedScale, pacmans, ghosts,
+                    elapsedMillis, moves, movesPerSecond(), moveWaitMeanNanos, moveWaitP99Nanos, kills, spawns);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%8d %5d%% %7d %6d %8.1f %10d %10.1f %12.1f %11.1f %7d",
+                    entities, speedScale, pacmans, ghosts, elapsedMillis / 1000.0, moves, movesPerSecond(),
+                    moveWaitMeanNanos / 1000.0, moveWaitP99Nanos / 1000.0, kills);
+        }
+    }
+
+    /**
+     * Initializes a new stress runner
+     *
+     * @param scenario      base scenario, scaled at each point
+     * @param boardPath     board file of the games
+     * @param executionMode of the games
+     * @param seed          of every game
+     * @param seconds       of each game
+     */
+    public StressRunner(Scenario scenario, String boardPath, ExecutionMode executionMode, long seed, int seconds) {
+        assert scenario != null;
+        assert boardPath != null;
+        assert executionMode != null && executionMode.isSupported();
+        assert seconds > 0;
+
+        this.scenario = scenario;
+        this.boardPath = boardPath;
+        this.executionMode = executionMode;
+        this.seed = seed;
+        this.seconds = seconds;
+    }
+
+    /**
+     * Admits the moves of the games in arrival order, see {@link GameController#useFairAdmission()}
+     *
+     * @param fair true for fair admission
+     */
+    public void setFairAdmission(boolean fair) {
+        fairAdmission = fair;
+    }
+
+    /**
+     * Measures every combination of number of entities and speed scale, and prints the curve
+     *
+     * @param entities    numbers of extra entities
+     * @param speedScales percentages applied to the entity speeds
+     * @param csvPath     file the curve is also written to as CSV, null for none
+     * @return samples, in the order they were printed
+     * @throws IOException if the CSV file cannot be written
+     */
+    public List<Sample> sweep(int[] entities, int[] speedScales, String csvPath) throws IOException {
+        List<Sample> samples = new ArrayList<>();
+
+        out.println("Stressing " + scenario + ", " + executionMode + (fairAdmission ? " with fair admission" : "")
+                + ", " + seconds + "s per point, seed " + seed);
+        out.println(Sample.header());
+
+        try (PrintWriter csv = csvPath == null ? null : new PrintWriter(new FileWriter(csvPath))) {
+            if (csv != null)
+                csv.println(Sample.csvHeader());
+
+            for (int n : entities)
+                for (int speedScale : speedScales) {
+                    Sample sample = measure(scenario.scaled(n, speedScale), n);
+                    out.println(sample);
+                    if (csv != null) {
+                        csv.println(sample.toCsv());
+                        csv.flush();
+                    }
+                    samples.add(sample);
+                }
+        }
+
+        return samples;
+    }
+
+    /**
+     * Plays one point of the curve
+     *
+     * @param scaled   scenario of the point
+     * @param entities number of extra entities of the point
+     * @return sample
+     */
+    private Sample measure(Scenario scaled, int entities) {
+        GameController gc = new GameController(scaled.lives, scaled.attackDuration, scaled.endless, true,
+                executionMode, boardPath, true);
+        if (fairAdmission)
+            gc.useFairAdmission();
+
+        try {
+            List<Entity> players = scaled.createEntities(gc, new Random(seed));
+            players.forEach(gc::attachExtraEntity);
+
+            long started = System.nanoTime();
+            players.forEach(Entity::start);
+
+            if (executionMode == ExecutionMode.TICK) {
+                new TickEngine(gc, seed, Game.TICK_MILLIS, Runtime.getRuntime().availableProcessors(), false)
+                        .run(seconds * 1000L / Game.TICK_MILLIS);
+            } else {
+                long deadline = started + seconds * 1_000_000_000L;
+                while (gc.gameInProgress() && System.nanoTime() < deadline)
+                    CThread.pause(POLL_PAUSE);
+            }
+
+            long elapsed = (System.nanoTime() - started) / 1_000_000;
+            gc.stopGame();
+            gc.waitingForGameToEnd();
+
+            return new Sample(scaled, entities, elapsed, gc.metrics());
+        } finally {
+            gc.metrics().unregister();
+        }
+    }
+}
@@ -1,32 +1,48 @@
 package pacman.active;
 
+import pacman.other.MoveStats;
 import pacman.passive.GameController;
+import pacman.passive.MoveCommand;
 import pt.ua.concurrent.CThread;
+import pt.ua.concurrent.ThreadInterruptedException;
 
 import java.awt.*;
-import java.util.Collections;
-import java.util.Stack;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Entity is an abstract class that can represent an active entity in the map
  * Shared algorithms already implemented
+ * Entities are executed by a worker according to the game execution mode (pooled platform thread or virtual
+ * thread), or are advanced step by step by a tick engine.
  */
-public abstract class Entity extends CThread {
+public abstract class Entity implements Runnable {
 
+    private static final ThreadLocal<Entity> current = new ThreadLocal<>();
+
+    public final int id;
     public final Point initPos;
     public final int initialSpeed;
     public final char initialSymbol;
     final GameController gc;
+    private final String name;
+    // a lock and not the entity monitor, so a virtual thread interrupting the entity in the middle of a move does not
+    // pin its carrier
+    private final ReentrantLock lifecycle = new ReentrantLock();
+    private final Condition stoppedRunning = lifecycle.newCondition();
+    private Thread thread; // guarded by lifecycle, set while running in a worker
+    private volatile boolean ticking, running, stopped;
+    private Walk walk; // tick mode only
+    private int generation = 0;
     final char markedStartSymbol;
     private final char startSymbol;
     private final char markedPositionSymbol = '+';
     private final char actualPositionSymbol = 'o';
     public volatile Point lastPos;
-    public char symbol;
-    protected boolean underAttack = false;
-    ConcurrentHashMap<Point, Character> pathLog;
-    int speed;
+    final PathMemory pathLog;
+    private final MoveStats moveStats = new MoveStats();
+    private final MoveCommand moveCommand = new MoveCommand(this);
 
 
     /**
@@ -39,111 +55,313 @@ public abstract class Entity extends CThread {
      * @param speed  of the entity
      */
     Entity(String name, char symbol, GameController gc, Point pos, int speed) {
-        super(name);
+        assert name != null;
         assert gc != null;
         assert pos != null;
         assert speed > 0;
 
-        this.symbol = symbol;
+        this.id = gc.nextEntityId();
+        this.name = name;
         initialSymbol = symbol;
         this.gc = gc;
         lastPos = pos;
         this.initPos = pos;
-        this.speed = speed;
         initialSpeed = speed;
 
         this.startSymbol = symbol;
         this.markedStartSymbol = symbol;
 
-        pathLog = new ConcurrentHashMap<>();
+        pathLog = new PathMemory(gc.numberOfCells());
+    }
+
+    /**
+     * Entity running in the current thread
+     *
+     * @return current entity, null if the current thread is not running an entity
+     */
+    public static Entity current() {
+        return current.get();
+    }
+
+    /**
+     * Starts the entity in a worker of the game execution mode: a pooled platform thread or a new virtual thread.
+     * In tick mode no worker is used, the entity waits for the tick engine to advance it.
+     * A stopped entity can be started again after being recycled.
+     */
+    public void start() {
+        assert !isAlive();
+
+        stopped = false;
+        moveStats.started(gc.now());
+
+        if (gc.executionMode() == ExecutionMode.TICK) {
+            ticking = true;
+            return;
+        }
+
+        running = true;
+        gc.metrics().entityStarted();
+        gc.workers().execute(this::work, name);
+    }
+
+    /**
+     * Runs the entity in the current worker, until interrupted
+     */
+    private void work() {
+        try {
+            lifecycle.lock();
+            try {
+                if (stopped) return; // interrupted before starting
+                thread = Thread.currentThread();
+            } finally {
+                lifecycle.unlock();
+            }
+
+            current.set(this);
+            run();
+        } finally {
+            current.remove();
+
+            lifecycle.lock();
+            try {
+                thread = null;
+                running = false;
+                stoppedRunning.signalAll();
+            } finally {
+                lifecycle.unlock();
+            }
+            gc.metrics().entityStopped();
+        }
     }
 
     @Override
     public abstract void run();
 
     /**
-     * Randomly walks around the map
+     * Interrupts the entity. Its next pause throws a ThreadInterruptedException.
+     */
+    public void interrupt() {
+        assert running || ticking;
+
+        lifecycle.lock();
+        try {
+            stopped = true;
+
+            if (thread != null)
+                thread.interrupt();
+        } finally {
+            lifecycle.unlock();
+        }
+    }
+
+    /**
+     * Checks if the entity was interrupted
      *
-     * @param distance to jump from the current location
-     * @param pos      position to travel to
-     * @return true if a objective was found
+     * @return true if interrupted
      */
-    boolean searchPath(int distance, Point pos) {
-        assert distance > 0;
-        assert pos != null;
-        assert super.isAlive();
+    public boolean isInterrupted() {
+        return stopped;
+    }
 
-        boolean result = false;
+    /**
+     * Checks if the entity is running (in tick mode, if it was started and not interrupted)
+     *
+     * @return true if alive
+     */
+    public boolean isAlive() {
+        return ticking ? !stopped : running;
+    }
 
-        if (freePosition(pos) && !isInterrupted()) {
-            CThread.pause(speed);
+    /**
+     * Waits for an interrupted entity to stop running
+     */
+    public void awaitStopped() {
+        assert stopped;
+
+        lifecycle.lock();
+        try {
+            while (running)
+                stoppedRunning.await();
+        } catch (InterruptedException e) {
+            throw new ThreadInterruptedException(e);
+        } finally {
+            lifecycle.unlock();
+        }
+    }
 
-            markPosition(pos);
+    /**
+     * Checks if the entity can be recycled once stopped, instead of being replaced by a new one
+     *
+     * @return true if recyclable
+     */
+    public boolean recyclable() {
+        return true;
+    }
 
-            Point lp = (Point) pos.clone();
-            pos = gc.reportPosition(pos);
-            assert gc.isRoad(pos);
+    /**
+     * Resets a stopped entity to its initial state, so it can be started again
+     */
+    public void recycle() {
+        assert stopped && !running;
+        assert recyclable();
+
+        lastPos = initPos;
+        walk = null;
+        pathLog.clear();
+        generation++;
+    }
 
-            if (!lp.equals(pos)) {
-                markPosition(lastPos);
-                markPosition(pos);
-            }
+    /**
+     * Number of times the entity was recycled
+     *
+     * @return generation, 0 for a new entity
+     */
+    public int generation() {
+        return generation;
+    }
 
-            Stack<Point> shuffleDirections = shuffleDirections();
+    /**
+     * Move statistics of the entity, recorded by the game controller as its moves are committed
+     *
+     * @return statistics
+     */
+    public MoveStats moveStats() {
+        return moveStats;
+    }
 
-            while (!shuffleDirections.isEmpty()) {
-                if (searchPath(distance + 1, getDirection(pos, shuffleDirections.pop()))) {
-                    result = true;
-                }
-            }
-            CThread.pause(speed);
+    /**
+     * Command the game controller posts the moves of the entity with, when region actors run them
+     *
+     * @return move command, reused by every move
+     */
+    public MoveCommand moveCommand() {
+        return moveCommand;
+    }
 
-            unmarkPosition(pos);
-            pos = gc.reportPosition(pos);
-            assert gc.isRoad(pos);
-            unmarkPosition(pos);
-        }
+    /**
+     * Name of the entity
+     *
+     * @return name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Tick mode: prepares the entity to be advanced step by step
+     *
+     * @param seed of the entity random walk
+     */
+    public void prepareSteps(long seed) {
+        assert ticking;
+        assert walk == null;
+
+        walk = newWalk(new SplittableRandom(seed), announcesStart());
+    }
+
+    /**
+     * Tick mode: checks if the entity was prepared to be advanced step by step since it last started
+     *
+     * @return true if prepared
+     */
+    public boolean stepsPrepared() {
+        return walk != null;
+    }
+
+    /**
+     * Tick mode: plans the next move of the random walk. Only reads the game state.
+     *
+     * @return position to report, null if the entity has no move for now
+     */
+    public Point planStep() {
+        assert walk != null;
+
+        return walk.plan();
+    }
+
+    /**
+     * Tick mode: the planned move was reported to the game controller
+     *
+     * @param pos position returned by the game controller
+     */
+    public void stepCommitted(Point pos) {
+        assert walk != null;
+
+        walk.committed(pos);
+    }
+
+    /**
+     * Current speed of the entity: time between two moves
+     *
+     * @return speed in milliseconds
+     */
+    public int speed() {
+        return initialSpeed;
+    }
 
-        return result;
+    /**
+     * Symbol currently representing the entity on the board
+     *
+     * @return symbol
+     */
+    public char symbol() {
+        return initialSymbol;
     }
 
     /**
-     * Shuffles the direction of the movement. Making it more random
+     * Does the entity report its start position before starting the random walk
      *
-     * @return directions shuffled
+     * @return true if the start position is reported first
      */
-    private Stack<Point> shuffleDirections() {
-        Stack<Point> directions = new Stack<>();
-        directions.push(new Point(-1, 0));
-        directions.push(new Point(0, +1));
-        directions.push(new Point(0, -1));
-        directions.push(new Point(+1, 0));
-        Collections.shuffle(directions);
-        return directions;
+    boolean announcesStart() {
+        return false;
     }
 
     /**
-     * Computes the next Point position according to the movement direction
+     * Creates the walk of the entity, a random depth first exploration by default
      *
-     * @param a actual position
-     * @param b direction of the movement
-     * @return position of the desired movement
+     * @param random   source of the walk randomness
+     * @param announce if the start position is reported first
+     * @return new walk
      */
-    private Point getDirection(Point a, Point b) {
-        return new Point(a.x + b.x, a.y + b.y);
+    Walk newWalk(SplittableRandom random, boolean announce) {
+        return new Explorer(this, random, announce);
     }
 
     /**
-     * Checks if the position is a valid, free position to move
+     * Checks if the random walk can enter a position
      *
      * @param pos to check
-     * @return if valid
+     * @return true if inside the map, road and free
      */
-    boolean freePosition(Point pos) {
-        assert pos != null;
-        assert gc.isRoad(pos);
+    boolean canEnter(Point pos) {
+        return gc.validPosition(pos) && gc.isRoad(pos) && freePosition(gc.cellIndex(pos));
+    }
+
+    /**
+     * Walks around the map, forever, one move every speed milliseconds, see {@link #newWalk(SplittableRandom, boolean)}.
+     */
+    void walk() {
+        Walk walker = newWalk(new SplittableRandom(), false);
 
-        char rs = roadSymbol(pos);
+        //noinspection InfiniteLoopStatement
+        while (true) {
+            Point pos = walker.plan();
+            CThread.pause(speed());
+
+            if (pos != null) // otherwise the start position is taken, try again later
+                walker.committed(gc.reportPosition(pos));
+        }
+    }
+
+    /**
+     * Checks if the cell is a free position to move
+     *
+     * @param cell index of a road cell
+     * @return if valid
+     */
+    boolean freePosition(int cell) {
+        char rs = roadSymbol(cell);
 
         return rs == ' ' // road
                 || rs == '$' // bonus
@@ -156,16 +374,13 @@ public abstract class Entity extends CThread {
     /**
      * Marks the travelled path with an symbol
      *
-     * @param pos position to mark
+     * @param cell index of the position to mark
      */
-    private void markPosition(Point pos) {
-        assert pos != null;
-        assert gc.isRoad(pos);
-
-        if (isStartPosition(pos)) {
-            putRoadSymbol(pos, markedStartSymbol);
+    void markPosition(int cell) {
+        if (isStartPosition(cell)) {
+            putRoadSymbol(cell, markedStartSymbol);
         } else {
-            putRoadSymbol(pos, actualPositionSymbol);
+            putRoadSymbol(cell, actualPositionSymbol);
         }
 
     }
@@ -173,63 +388,56 @@ public abstract class Entity extends CThread {
     /**
      * Unmarks an travelled path
      *
-     * @param pos position to unmark
+     * @param cell index of the position to unmark
      */
-    private void unmarkPosition(Point pos) {
-        assert pos != null;
-        assert gc.isRoad(pos);
-
-        if (!isStartPosition(pos)) {
-            putRoadSymbol(pos, markedPositionSymbol);
+    void unmarkPosition(int cell) {
+        if (!isStartPosition(cell)) {
+            putRoadSymbol(cell, markedPositionSymbol);
         }
     }
 
     /**
      * Checks if the position is the start position
      *
-     * @param pos position to check
+     * @param cell index of the position to check
      * @return true if is the start
      */
-    private boolean isStartPosition(Point pos) {
-        assert pos != null;
-        assert gc.isRoad(pos);
+    private boolean isStartPosition(int cell) {
+        char rs = roadSymbol(cell);
 
-        return roadSymbol(pos) == startSymbol
-                || roadSymbol(pos) == markedStartSymbol;
+        return rs == startSymbol
+                || rs == markedStartSymbol;
     }
 
     /**
      * Checks the symbol on the road
-     * This method caches the map from the map
+     * This method caches the map from the map, refreshing the cells that changed since they were cached
      *
-     * @param pos position to check
+     * @param cell index of the road position to check
      * @return symbol of the road
      */
-    char roadSymbol(Point pos) {
-        assert pos != null;
-        assert gc.isRoad(pos);
+    char roadSymbol(int cell) {
+        int version = gc.cellVersion(cell);
+        char symbol = pathLog.symbol(cell, version);
 
-        return pathLog.computeIfAbsent(pos, (t) -> gc.CachedRoadSymbol(pos));
+        if (symbol == PathMemory.UNKNOWN) {
+            symbol = gc.CachedRoadSymbol(cell);
+            pathLog.remember(cell, symbol, version);
+        }
+
+        return symbol;
     }
 
     /**
      * Puts an symbol in the road in the local cached map
      *
-     * @param pos    position to mark
+     * @param cell   index of the position to mark
      * @param symbol symbol to use in the mark
      */
-    private void putRoadSymbol(Point pos, char symbol) {
-        assert pos != null;
-        assert gc.isRoad(pos);
-
-        pathLog.put(pos, symbol);
+    private void putRoadSymbol(int cell, char symbol) {
+        pathLog.mark(cell, symbol);
     }
 
-    /**
-     * When pacman is attacking what behaviour to have
-     */
-    public abstract void attackMode();
-
     /**
      * Returns the entity speed
      *
@@ -254,7 +462,7 @@ public abstract class Entity extends CThread {
      * @return true if under attack
      */
     public boolean underAttack() {
-        return underAttack;
+        return false;
     }
 
 }
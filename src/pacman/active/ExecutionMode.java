@@ -0,0 +1,85 @@
+package pacman.active;
+
+import pt.ua.concurrent.CThread;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * How entities are executed.
+ * In thread modes entities keep the CThread semantics: they sleep with CThread.pause and are stopped by an interrupt
+ * that surfaces as a ThreadInterruptedException.
+ */
+public enum ExecutionMode {
+
+    /**
+     * One platform CThread per entity
+     */
+    PLATFORM,
+
+    /**
+     * One virtual thread per entity. Requires a Java runtime with virtual threads (21 or newer).
+     */
+    VIRTUAL,
+
+    /**
+     * No threads per entity. A tick engine advances all entities in discrete, reproducible steps.
+     */
+    TICK;
+
+    private static final MethodHandle ofVirtual, name, unstarted;
+
+    static {
+        MethodHandle o = null, n = null, u = null;
+
+        // looked up reflectively so the game still builds and runs on runtimes without virtual threads
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            Class<?> ofVirtualBuilder = Class.forName("java.lang.Thread$Builder$OfVirtual");
+
+            o = lookup.findStatic(Thread.class, "ofVirtual", MethodType.methodType(ofVirtualBuilder));
+            n = lookup.findVirtual(builder, "name", MethodType.methodType(builder, String.class));
+            u = lookup.findVirtual(builder, "unstarted", MethodType.methodType(Thread.class, Runnable.class));
+        } catch (ReflectiveOperationException e) {
+            o = null; // virtual threads not available
+        }
+
+        ofVirtual = o;
+        name = n;
+        unstarted = u;
+    }
+
+    /**
+     * Checks if the mode is supported by the running JVM
+     *
+     * @return true if supported
+     */
+    public boolean isSupported() {
+        return this != VIRTUAL || ofVirtual != null;
+    }
+
+    /**
+     * Creates an unstarted thread in this mode
+     *
+     * @param task       to run
+     * @param threadName name of the thread
+     * @return unstarted thread
+     */
+    Thread newThread(Runnable task, String threadName) {
+        assert task != null;
+        assert isSupported();
+        assert this != TICK;
+
+        if (this == PLATFORM)
+            return new CThread(task, threadName);
+
+        try {
+            Object builder = name.invoke(ofVirtual.invoke(), threadName);
+            return (Thread) unstarted.invoke(builder, task);
+        } catch (Throwable e) {
+            throw new IllegalStateException("Unable to create a virtual thread", e);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package pacman.active;
+
+import pacman.passive.GameController;
+
+import java.awt.*;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Random walk of an entity: a depth first exploration of the map from the start position, with the directions of
+ * each position tried in random order. Every position is reported when entered and again when left, on the way back.
+ * The exploration keeps an explicit stack of primitive arrays instead of recursing, so the board size is not bound
+ * by the thread stack, no step allocates, and the walk can be advanced one move at a time, either by the entity
+ * thread or by the tick engine. Only the owning entity, or the driver on its behalf, touches an explorer.
+ */
+class Explorer implements Walk {
+
+    private static final int ENTERING = 0, EXPLORING = 1, LEAVING = 2;
+
+    private final Entity entity;
+    private final GameController gc;
+    private final SplittableRandom random;
+    private int[] cells = new int[64];
+    private int[] orders = new int[64];
+    private int[] tried = new int[64];
+    private int[] phases = new int[64];
+    private int depth = 0;
+    private boolean announce;
+
+    /**
+     * Initializes a new explorer
+     *
+     * @param entity   that explores
+     * @param random   source of the direction shuffling
+     * @param announce if the entity first reports its start position, without exploring it
+     */
+    Explorer(Entity entity, SplittableRandom random, boolean announce) {
+        assert entity != null;
+        assert random != null;
+
+        this.entity = entity;
+        this.gc = entity.gc;
+        this.random = random;
+        this.announce = announce;
+    }
+
+    /**
+     * Plans the next move. Must be followed by {@link #committed(Point)} if the move is reported.
+     *
+     * @return position to report, null if there is nothing to explore for now
+     */
+    @Override
+    public Point plan() {
+        if (announce)
+            return entity.initPos;
+
+        while (true) {
+            if (depth == 0) {
+                // new exploration round
+                entity.pathLog.clear();
+
+                if (!entity.canEnter(entity.initPos))
+                    return null;
+
+                int root = gc.cellIndex(entity.initPos);
+                entity.markPosition(root);
+                push(root);
+                return entity.initPos;
+            }
+
+            int top = depth - 1;
+            assert phases[top] == EXPLORING;
+
+            if (tried[top] < 4) {
+                int direction = (orders[top] >> (2 * tried[top]++)) & 3;
+                int neighbour = gc.neighbour(cells[top], direction);
+
+                if (neighbour >= 0 && entity.freePosition(neighbour)) {
+                    entity.markPosition(neighbour);
+                    push(neighbour);
+                    return gc.position(neighbour);
+                }
+            } else {
+                // every direction explored, move back to this position
+                entity.unmarkPosition(cells[top]);
+                phases[top] = LEAVING;
+                return gc.position(cells[top]);
+            }
+        }
+    }
+
+    /**
+     * The last planned move was reported
+     *
+     * @param pos position returned by the game controller
+     */
+    @Override
+    public void committed(Point pos) {
+        if (announce) {
+            announce = false;
+            return;
+        }
+
+        int top = depth - 1;
+
+        if (phases[top] == ENTERING) {
+            int cell = gc.cellIndex(pos);
+            if (cell != cells[top]) { // teleported by a portal
+                entity.markPosition(gc.cellIndex(entity.lastPos));
+                entity.markPosition(cell);
+                cells[top] = cell;
+            }
+
+            orders[top] = shuffledDirections();
+            tried[top] = 0;
+            phases[top] = EXPLORING;
+        } else {
+            assert phases[top] == LEAVING;
+
+            entity.unmarkPosition(gc.cellIndex(pos));
+            depth--;
+        }
+    }
+
+    /**
+     * Pushes a position being entered
+     *
+     * @param cell index of the position
+     */
+    private void push(int cell) {
+        if (depth == cells.length) {
+            cells = Arrays.copyOf(cells, depth * 2);
+            orders = Arrays.copyOf(orders, depth * 2);
+            tried = Arrays.copyOf(tried, depth * 2);
+            phases = Arrays.copyOf(phases, depth * 2);
+        }
+
+        cells[depth] = cell;
+        phases[depth] = ENTERING;
+        depth++;
+    }
+
+    /**
+     * Random permutation of the four directions, two bits per direction
+     *
+     * @return packed directions
+     */
+    private int shuffledDirections() {
+        int packed = 0 | 1 << 2 | 2 << 4 | 3 << 6;
+
+        // Fisher-Yates over the two bit fields
+        for (int i = 3; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int di = (packed >> (2 * i)) & 3;
+            int dj = (packed >> (2 * j)) & 3;
+            packed &= ~(3 << (2 * i) | 3 << (2 * j));
+            packed |= dj << (2 * i) | di << (2 * j);
+        }
+
+        return packed;
+    }
+}
@@ -1,16 +1,10 @@
 package pacman.active;
 
+import pacman.other.EventLog;
 import pacman.passive.GameController;
-import pt.ua.concurrent.CThread;
 import pt.ua.concurrent.ThreadInterruptedException;
 
 import java.awt.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
-
-import static java.lang.System.err;
-import static java.lang.System.out;
 
 /**
  * Ghost class. Special cases include trespassing ghost cages and continually running.
@@ -19,8 +13,7 @@ public class Ghost extends Entity {
 
     public final int attackModeSlowdownFactor;
     public final int blinkSpeed;
-    private final boolean alive = true;
-    private ScheduledExecutorService es;
+    private long joined; // bonuses eaten before the ghost started
 
     public Ghost(String name, GameController gc, char symbol, Point pos, int speed, int slowdownFactor, int blinkSpeed) {
         super(name, symbol, gc, pos, speed);
@@ -34,97 +27,67 @@ public class Ghost extends Entity {
      */
     @Override
     public void run() {
-        //out.println(super.getName() + " started");
+        //out.println(getName() + " started");
 
         try {
-            //noinspection InfiniteLoopStatement
-            while (alive) {
-                searchPath(1, initPos);
-                pathLog = new ConcurrentHashMap<>();
-            }
+            walk();
         } catch (ThreadInterruptedException ex) {
-            out.println(super.getName() + " interrupted at position " + lastPos);
+            gc.log().log(EventLog.Message.GHOST_INTERRUPTED, getName(), lastPos, null, 0);
         }
     }
 
-    @Override
-    boolean searchPath(int distance, Point pos) {
-        assert pos != null;
-        assert distance > 0;
-
-        if (gc.validPosition(pos) && gc.isRoad(pos))
-            super.searchPath(distance, pos);
-
-        return false;
-    }
-
     /**
      * Allow to pass ghost cage gate
      *
-     * @param pos to check
+     * @param cell index of the road cell to check
      * @return true if valid path to wander
      */
     @Override
-    boolean freePosition(Point pos) {
-        assert pos != null;
-        assert gc.isRoad(pos);
-
-        return super.freePosition(pos)
-                || roadSymbol(pos) == '%'; // allow passing though ghost cage gate
+    boolean freePosition(int cell) {
+        return super.freePosition(cell)
+                || roadSymbol(cell) == '%'; // allow passing though ghost cage gate
     }
 
     /**
-     * Schedule threads at a fixed rate that toggle black and white ghost representation
+     * Starts the ghost. Bonuses eaten before it started do not frighten it.
      */
     @Override
-    public void attackMode() {
-
-        if (es == null || es.isTerminated()) {
-
-            symbol = 'b'; // ghost black
-            underAttack = true;
-
-            es = java.util.concurrent.Executors.newScheduledThreadPool(1);
-
-            es.scheduleAtFixedRate(() -> {
-                //out.println("Toggling " + super.getName() + " symbol");
-                if (symbol == 'w')
-                    symbol = 'b';
-                else
-                    symbol = 'w';
-
-            }, 0, blinkSpeed, TimeUnit.MILLISECONDS);
-
-            speed = speed * attackModeSlowdownFactor;
-
-            // wait for attack mode to end.
-            new CThread(() -> {
-                gc.hasAttackModeEnded();
-                disableAttackMode();
-            }).start();
-        }
+    public void start() {
+        joined = gc.attackPhase().bonuses();
+        super.start();
+    }
 
+    /**
+     * A ghost is under attack while the attack mode started after it entered the game is on
+     *
+     * @return true if under attack
+     */
+    @Override
+    public boolean underAttack() {
+        return gc.attackPhase().frightens(joined);
     }
 
-    private void disableAttackMode() {
-        assert !es.isTerminated();
+    /**
+     * Ghosts are slowed down while under attack
+     *
+     * @return speed in milliseconds
+     */
+    @Override
+    public int speed() {
+        return underAttack() ? initialSpeed * attackModeSlowdownFactor : initialSpeed;
+    }
 
-        try {
-            out.println("Ending " + super.getName() + " attack mode");
-            speed = speed / attackModeSlowdownFactor;
-            underAttack = false;
-            es.shutdown();
-            es.awaitTermination(1, TimeUnit.SECONDS);
-        } catch (InterruptedException e) {
-            // was blinking stuck? this should never happen
-            err.println("Forcing stop of a blinking Executor");
-            System.exit(1);
-        } finally {
-            // deal with the fault and force shutdown of blinking service
-            es.shutdownNow();
-        }
+    /**
+     * Under attack ghosts blink between white and black, following the attack mode clock
+     *
+     * @return symbol
+     */
+    @Override
+    public char symbol() {
+        if (!underAttack())
+            return initialSymbol;
 
-        symbol = markedStartSymbol;
+        return ((gc.now() - gc.attackPhase().start()) / blinkSpeed) % 2 == 0 ? 'w' : 'b';
     }
 
 }
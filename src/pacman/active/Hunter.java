@@ -0,0 +1,102 @@
+package pacman.active;
+
+import pacman.passive.DistanceTable;
+import pacman.passive.GameController;
+import pacman.passive.PelletIndex;
+
+import java.awt.*;
+import java.util.SplittableRandom;
+
+/**
+ * Pellet hunting walk of a pacman: every move heads for the closest pellet left, point or bonus, found by the pellet
+ * index, along a shortest road path given by the distance table. The target is chosen again before each move, so a
+ * pellet eaten by another pacman is dropped at once. With no pellet left, or no path to it, the pacman takes a random
+ * free step.
+ */
+class Hunter implements Walk {
+
+    private final Entity entity;
+    private final GameController gc;
+    private final PelletIndex pellets;
+    private final DistanceTable distances;
+    private final SplittableRandom random;
+    private boolean announce;
+
+    /**
+     * Initializes a new hunter
+     *
+     * @param entity   that hunts
+     * @param random   source of the random steps
+     * @param announce if the entity first reports its start position
+     */
+    Hunter(Entity entity, SplittableRandom random, boolean announce) {
+        assert entity != null;
+        assert random != null;
+
+        this.entity = entity;
+        this.gc = entity.gc;
+        this.pellets = gc.pellets();
+        this.distances = gc.distances();
+        this.random = random;
+        this.announce = announce;
+    }
+
+    @Override
+    public Point plan() {
+        if (announce)
+            return entity.initPos;
+
+        int cell = gc.cellIndex(entity.lastPos);
+        int target = target(cell);
+
+        if (target >= 0) {
+            int direction = distances.direction(cell, target);
+            int neighbour = direction == DistanceTable.UNREACHABLE ? -1 : gc.neighbour(cell, direction);
+            if (neighbour >= 0 && entity.freePosition(neighbour))
+                return gc.position(neighbour);
+        }
+
+        // random free step, starting from a random direction
+        int first = random.nextInt(4);
+        for (int i = 0; i < 4; i++) {
+            int neighbour = gc.neighbour(cell, (first + i) & 3);
+            if (neighbour >= 0 && entity.freePosition(neighbour))
+                return gc.position(neighbour);
+        }
+
+        return null;
+    }
+
+    @Override
+    public void committed(Point pos) {
+        announce = false;
+    }
+
+    /**
+     * Closest pellet left, point or bonus
+     *
+     * @param cell index of the hunter position
+     * @return index of the pellet cell, -1 if none is left
+     */
+    private int target(int cell) {
+        int point = pellets.nearest(cell, '.');
+        int bonus = pellets.nearest(cell, '$');
+
+        if (point < 0 || bonus < 0)
+            return Math.max(point, bonus);
+
+        return gridDistance(cell, bonus) < gridDistance(cell, point) ? bonus : point;
+    }
+
+    /**
+     * Distance between two cells on the board grid
+     *
+     * @param from index of a cell
+     * @param to   index of a cell
+     * @return moves ignoring walls and portals
+     */
+    private int gridDistance(int from, int to) {
+        Point a = gc.position(from), b = gc.position(to);
+        return Math.abs(a.x - b.x) + Math.abs(a.y - b.y);
+    }
+}
@@ -1,12 +1,11 @@
 package pacman.active;
 
+import pacman.other.EventLog;
 import pacman.passive.GameController;
 import pt.ua.concurrent.ThreadInterruptedException;
 
 import java.awt.*;
-import java.util.concurrent.ConcurrentHashMap;
-
-import static java.lang.System.out;
+import java.util.SplittableRandom;
 
 /**
  * Implements a Pacman. Simplest active entity
@@ -23,34 +22,32 @@ public class Pacman extends Entity {
 
     @Override
     public void run() {
-        //System.out.println(super.getName() + " started");
+        //System.out.println(getName() + " started");
         try {
             gc.reportPosition(initPos);
-
-            while (!searchPath(1, initPos)) {
-                //out.println("no solutions"); // note that pacman levels up before
-                searchPath(1, initPos);
-                pathLog = new ConcurrentHashMap<>();
-            }
+            walk();
         } catch (ThreadInterruptedException ex) {
-            out.println(super.getName() + " interrupted at position: " + lastPos);
+            gc.log().log(EventLog.Message.PACMAN_INTERRUPTED, getName(), lastPos, null, 0);
         }
     }
 
-    boolean searchPath(int distance, Point pos) {
-
-        if (gc.validPosition(pos) && gc.isRoad(pos))
-            super.searchPath(distance, pos);
-
-        return false;
+    /**
+     * Pacman reports its start position as soon as it starts
+     */
+    @Override
+    boolean announcesStart() {
+        return true;
     }
 
     /**
-     * No special modes for pacman when attack mode.
+     * Pacman hunts the closest pellet when the game controller asks it to, otherwise walks randomly
      */
     @Override
-    public void attackMode() {
-        throw new UnsupportedOperationException("Pacman has no attack mode implemented.");
+    Walk newWalk(SplittableRandom random, boolean announce) {
+        if (gc.huntsPellets())
+            return new Hunter(this, random, announce);
+
+        return super.newWalk(random, announce);
     }
 
 
@@ -0,0 +1,117 @@
+package pacman.active;
+
+import java.util.Arrays;
+
+/**
+ * Path memory of an entity: the road symbols it already knows and the marks it left on its travelled path.
+ * Only the owning entity touches it, so it is not synchronized.
+ * Entries are stamped with an epoch, clearing the memory is just moving to the next epoch. Symbols fetched from the
+ * game controller also keep the cell version they were read at, so a changed cell is detected without clearing
+ * everything else.
+ * Entries are kept in pages of {@value #PAGE_SIZE} cells, allocated when first written, so on large boards an entity
+ * only pays for the part of the board it walked.
+ */
+class PathMemory {
+
+    static final char UNKNOWN = '\0';
+    private static final int MARK = Integer.MIN_VALUE;
+    private static final int PAGE_SHIFT = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    private final char[][] symbols;
+    private final int[][] epochs;
+    private final int[][] versions;
+    private int epoch = 1;
+
+    /**
+     * Initializes a new path memory
+     *
+     * @param numberOfCells of the board
+     */
+    PathMemory(int numberOfCells) {
+        assert numberOfCells > 0;
+
+        int pages = (numberOfCells + PAGE_SIZE - 1) >>> PAGE_SHIFT;
+        symbols = new char[pages][];
+        epochs = new int[pages][];
+        versions = new int[pages][];
+    }
+
+    /**
+     * Forgets everything, in constant time
+     */
+    void clear() {
+        epoch++;
+
+        if (epoch == 0) { // wrapped around, old stamps could be mistaken as current
+            for (int[] page : epochs)
+                if (page != null)
+                    Arrays.fill(page, 0);
+            epoch = 1;
+        }
+    }
+
+    /**
+     * Symbol remembered for a cell
+     *
+     * @param cell    index of the cell
+     * @param version current version of the cell in the game controller
+     * @return the symbol, or UNKNOWN if never seen in this epoch or if the cell changed since it was read
+     */
+    char symbol(int cell, int version) {
+        int page = cell >>> PAGE_SHIFT, i = cell & PAGE_MASK;
+
+        if (epochs[page] == null || epochs[page][i] != epoch)
+            return UNKNOWN;
+
+        if (versions[page][i] != MARK && versions[page][i] != version)
+            return UNKNOWN;
+
+        return symbols[page][i];
+    }
+
+    /**
+     * Remembers a symbol read from the game controller
+     *
+     * @param cell    index of the cell
+     * @param symbol  read
+     * @param version of the cell when it was read
+     */
+    void remember(int cell, char symbol, int version) {
+        assert version != MARK;
+
+        put(cell, symbol, version);
+    }
+
+    /**
+     * Marks a cell of the travelled path. Marks do not become stale when the cell changes.
+     *
+     * @param cell   index of the cell
+     * @param symbol of the mark
+     */
+    void mark(int cell, char symbol) {
+        put(cell, symbol, MARK);
+    }
+
+    /**
+     * Stores an entry of the current epoch, allocating its page if needed
+     *
+     * @param cell    index of the cell
+     * @param symbol  to store
+     * @param version of the cell, or MARK
+     */
+    private void put(int cell, char symbol, int version) {
+        int page = cell >>> PAGE_SHIFT, i = cell & PAGE_MASK;
+
+        if (epochs[page] == null) {
+            symbols[page] = new char[PAGE_SIZE];
+            epochs[page] = new int[PAGE_SIZE];
+            versions[page] = new int[PAGE_SIZE];
+        }
+
+        symbols[page][i] = symbol;
+        versions[page][i] = version;
+        epochs[page][i] = epoch;
+    }
+}
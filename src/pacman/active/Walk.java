@@ -0,0 +1,24 @@
+package pacman.active;
+
+import java.awt.*;
+
+/**
+ * Way an entity moves around the map, one move at a time, either driven by the entity thread or by the tick engine.
+ * Only the owning entity, or the driver on its behalf, touches a walk.
+ */
+interface Walk {
+
+    /**
+     * Plans the next move. Must be followed by {@link #committed(Point)} if the move is reported.
+     *
+     * @return position to report, null if there is no move for now
+     */
+    Point plan();
+
+    /**
+     * The last planned move was reported
+     *
+     * @param pos position returned by the game controller
+     */
+    void committed(Point pos);
+}
@@ -0,0 +1,74 @@
+package pacman.active;
+
+import pt.ua.concurrent.CThread;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Workers running the entities of a game.
+ * Platform threads are pooled: the thread of a killed entity goes back to the pool and runs the next entity started,
+ * so respawning does not create a thread each time. Virtual threads are cheap to create and are not pooled.
+ * Pooled threads are daemons, a game ends when its main thread stops waiting for it.
+ */
+public class Workers {
+
+    private static final int KEEP_ALIVE_SECONDS = 10;
+
+    private final ExecutionMode executionMode;
+    private final ExecutorService pool;
+
+    /**
+     * Initializes the workers of a game
+     *
+     * @param executionMode of the game entities, not tick mode
+     */
+    public Workers(ExecutionMode executionMode) {
+        assert executionMode != null && executionMode != ExecutionMode.TICK;
+
+        this.executionMode = executionMode;
+
+        if (executionMode == ExecutionMode.PLATFORM) {
+            pool = new ThreadPoolExecutor(0, Integer.MAX_VALUE, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new SynchronousQueue<>(),
+                    task -> {
+                        CThread worker = new CThread(task);
+                        worker.setDaemon(true);
+                        return worker;
+                    });
+        } else {
+            pool = null;
+        }
+    }
+
+    /**
+     * Runs a task in a worker
+     *
+     * @param task to run
+     * @param name of the worker while it runs the task
+     */
+    void execute(Runnable task, String name) {
+        assert task != null;
+        assert name != null;
+
+        if (pool == null) {
+            executionMode.newThread(task, name).start();
+            return;
+        }
+
+        pool.execute(() -> {
+            Thread.currentThread().setName(name);
+            task.run();
+        });
+    }
+
+    /**
+     * Stops pooling threads. Running entities keep their workers until they stop.
+     */
+    public void shutdown() {
+        if (pool != null)
+            pool.shutdown();
+    }
+}
@@ -0,0 +1,262 @@
+package pacman.other;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Append-only binary journal of the game events, for post-mortem analysis and replay.
+ * Records have a fixed width and are written straight into a memory-mapped file: a writer claims the next slot with
+ * one atomic increment and fills it, with no lock. The journal file is mapped in segments, as it grows.
+ * Records are claimed while the game state they describe is locked, so the journal order of the events of a cell is
+ * the order they happened in.
+ * <p>
+ * Layout: a header of {@link #RECORD_SIZE} bytes (magic, version, board columns and lines, start time and, once
+ * closed, the number of records) followed by the records. A record holds, in order: time (long), event (byte),
+ * unused (byte), symbol (char), entity (int), other entity (int), from cell (int), to cell (int) and value (int).
+ * The event is written last, a slot with no event was claimed but never written.
+ */
+public class EventJournal {
+
+    public static final int RECORD_SIZE = 32;
+    static final int MAGIC = 0x50434A31; // "PCJ1"
+    static final int VERSION = 1;
+    static final int SEGMENT_SHIFT = 24; // 16 MiB segments
+    static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+    private static final int MAX_SEGMENTS = 1024;
+
+    /**
+     * Recorded events. The meaning of the record fields depends on the event.
+     */
+    public enum Event {
+        /**
+         * An entity moved: from its last cell, where the symbol in value was restored, to a cell painted with symbol
+         */
+        MOVE,
+        /**
+         * A cell was painted with symbol, outside of a move (placement, kill, portal jump). Entity caused it.
+         */
+        PAINT,
+        /**
+         * Entity moved to a cell occupied by the other entity
+         */
+        COLLISION,
+        /**
+         * Entity was killed. Value holds the pacman lives left.
+         */
+        KILL,
+        /**
+         * Entity was added to the game, or respawned, at a cell with symbol. Value is 1 for ghosts.
+         */
+        SPAWN,
+        /**
+         * Entity collected a point on a cell. Value holds the points.
+         */
+        POINT,
+        /**
+         * Entity collected a bonus on a cell. Value holds the bonuses collected so far.
+         */
+        BONUS,
+        /**
+         * The attack mode ended
+         */
+        ATTACK_END,
+        /**
+         * The game ended. Value holds the points.
+         */
+        GAME_END;
+
+        private static final Event[] ALL = values();
+
+        /**
+         * Event of a code read from a journal
+         *
+         * @param code stored code
+         * @return event, null if no event was written
+         */
+        static Event of(int code) {
+            return code < 1 || code > ALL.length ? null : ALL[code - 1];
+        }
+
+        /**
+         * Code stored in a journal
+         *
+         * @return non zero code
+         */
+        byte code() {
+            return (byte) (ordinal() + 1);
+        }
+    }
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final AtomicLong next = new AtomicLong();
+    private final AtomicReferenceArray<MappedByteBuffer> segments = new AtomicReferenceArray<>(MAX_SEGMENTS);
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicInteger writers = new AtomicInteger(); // records being written, waited for by close
+    private volatile boolean closed = false;
+
+    /**
+     * Creates a new journal, replacing any file with the same path
+     *
+     * @param path      of the journal file
+     * @param columns   of the board
+     * @param lines     of the board
+     * @param startTime game time in milliseconds when recording started
+     */
+    public EventJournal(String path, int columns, int lines, long startTime) {
+        assert path != null;
+        assert columns > 0 && lines > 0;
+
+        try {
+            file = new RandomAccessFile(path, "rw");
+            file.setLength(0);
+            channel = file.getChannel();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to create journal " + path, e);
+        }
+
+        MappedByteBuffer header = segment(0);
+        header.putInt(0, MAGIC);
+        header.putInt(4, VERSION);
+        header.putInt(8, columns);
+        header.putInt(12, lines);
+        header.putLong(16, startTime);
+        header.putLong(24, 0);
+    }
+
+    /**
+     * Appends a record. Does not block, records after the journal is closed or full are dropped.
+     *
+     * @param event  recorded
+     * @param time   game time in milliseconds
+     * @param entity id of the entity, -1 if none
+     * @param other  id of another entity, -1 if none
+     * @param from   cell index, -1 if none
+     * @param to     cell index, -1 if none
+     * @param symbol road symbol, '\0' if none
+     * @param value  event specific
+     */
+    public void record(Event event, long time, int entity, int other, int from, int to, char symbol, int value) {
+        assert event != null;
+
+        writers.incrementAndGet();
+        try {
+            if (closed) {
+                dropped.increment();
+                return;
+            }
+
+            write(event, time, entity, other, from, to, symbol, value);
+        } finally {
+            writers.decrementAndGet();
+        }
+    }
+
+    /**
+     * Claims the next slot and writes a record in it
+     *
+     * @param event  recorded
+     * @param time   game time in milliseconds
+     * @param entity id of the entity, -1 if none
+     * @param other  id of another entity, -1 if none
+     * @param from   cell index, -1 if none
+     * @param to     cell index, -1 if none
+     * @param symbol road symbol, '\0' if none
+     * @param value  event specific
+     */
+    private void write(Event event, long time, int entity, int other, int from, int to, char symbol, int value) {
+        long offset = (next.getAndIncrement() + 1) * RECORD_SIZE; // the header takes the first slot
+        int index = (int) (offset >>> SEGMENT_SHIFT);
+        if (index >= MAX_SEGMENTS) {
+            dropped.increment();
+            return;
+        }
+
+        // absolute puts only, so writers of different slots never interfere
+        MappedByteBuffer segment = segment(index);
+        int at = (int) (offset & (SEGMENT_SIZE - 1));
+        segment.putLong(at, time);
+        segment.putChar(at + 10, symbol);
+        segment.putInt(at + 12, entity);
+        segment.putInt(at + 16, other);
+        segment.putInt(at + 20, from);
+        segment.putInt(at + 24, to);
+        segment.putInt(at + 28, value);
+        segment.put(at + 8, event.code());
+    }
+
+    /**
+     * Number of records dropped, because the journal was closed or full
+     *
+     * @return dropped records
+     */
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Flushes the journal to disk, truncates the file after its last record and closes it. Records written
+     * afterwards are dropped. Waits for the records being written, that are not in a critical section of the
+     * closing thread.
+     */
+    public synchronized void close() {
+        if (closed)
+            return;
+        closed = true;
+
+        // writers that saw the journal open finish their record before the file shrinks under their mapping
+        while (writers.get() > 0)
+            Thread.onSpinWait();
+
+        long records = Math.min(next.get(), MAX_SEGMENTS * (SEGMENT_SIZE / RECORD_SIZE) - 1);
+        segment(0).putLong(24, records);
+
+        for (int i = 0; i < MAX_SEGMENTS; i++) {
+            MappedByteBuffer segment = segments.getAndSet(i, null);
+            if (segment != null)
+                segment.force();
+        }
+
+        try {
+            // mappings are not used anymore. A platform that does not truncate mapped files keeps the whole last
+            // segment, the record count of the header still bounds the replay
+            file.setLength((records + 1) * RECORD_SIZE);
+        } catch (IOException e) {
+            // keep the full length
+        }
+
+        try {
+            channel.close();
+            file.close();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to close journal", e);
+        }
+    }
+
+    /**
+     * Mapped segment of the journal, mapped on first use. Two writers may map the same segment, only one mapping
+     * is kept.
+     *
+     * @param index of the segment
+     * @return mapped segment
+     */
+    private MappedByteBuffer segment(int index) {
+        MappedByteBuffer segment = segments.get(index);
+        if (segment != null)
+            return segment;
+
+        try {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, index * SEGMENT_SIZE, SEGMENT_SIZE);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to map journal segment " + index, e);
+        }
+
+        return segments.compareAndSet(index, null, segment) ? segment : segments.get(index);
+    }
+}
@@ -0,0 +1,425 @@
+package pacman.other;
+
+import pt.ua.concurrent.CThread;
+import pt.ua.concurrent.ThreadInterruptedException;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Leveled game event log, written to the console by a background thread.
+ * Producers do not format anything: a record, the message and its arguments (objects the game already holds, such
+ * as entity names and positions, and a number), is written into a preallocated slot of a ring buffer, claimed with
+ * one atomic increment, so logging allocates nothing and holds no lock. A single drainer thread formats the records in
+ * the order their slots were claimed and prints them. When the ring is full the record is dropped and counted rather
+ * than waiting for the console, as producers log inside the game critical sections; the drainer prints how many were
+ * dropped. Messages below the log level, or of a muted category, are discarded before claiming a slot.
+ * With nothing to print the drainer parks, and the producer that publishes the next record unparks it, so an idle log,
+ * such as the log of a game that ended, costs no wakeups.
+ */
+public class EventLog {
+
+    private static final int DEFAULT_CAPACITY = 8192;
+
+    /**
+     * Levels of the messages, from the most verbose
+     */
+    public enum Level {
+        DEBUG, INFO, WARN, OFF
+    }
+
+    /**
+     * Categories of the messages, muted independently
+     */
+    public enum Category {
+        GAME, KILL, SPAWN, POINTS, ENTITY, WATCHDOG
+    }
+
+    /**
+     * Logged messages. Each one formats its arguments into the printed line.
+     */
+    public enum Message {
+        MAX_POINTS(Category.GAME, Level.INFO) {
+            @Override
+            void format(StringBuilder sb, Object a, Object b, Object c, long value) {
+                sb.append("Game maximum number of points: ").append(value);
+            }
+        },
+        UPDATED_MAX_POINTS(Category.GAME, Level.INFO) {
+            @Override
+            void format(StringBuilder sb, Object a, Object b, Object c, long value) {
+                sb.append("Updated maximum number of points to ").append(value);
+            }
+        },
+        REGIONS(Category.GAME, Level.INFO) {
+            @Override
+            void format(StringBuilder sb, Object a, Object b, Object c, long value) {
+                sb.append("Board split in ").append(value).append(" regions");
+            }
+        },
+        FINAL_POINTS(Category.GAME, Level.INFO) {
+            @Override
+            void format(StringBuilder sb, Object a, Object b, Object c, long value) {
+                sb.append("Final points:").append(value);
+            }
+        },
+        /**
+         * a killing b at position c
+         */
+        KILLING(Category.KILL, Level.INFO) {
+            @Override
+            void format(StringBuilder sb, Object a, Object b, Object c, long value) {
+                sb.append("I am:").append(a).append(" killing ").append(b).append(' ').append(c)
+                        .append(" on cache:").append(b);
+            }
+        },
+        LIVES_LEFT(Category.KILL, Level.INFO) {
+            @Override
+            void format(StringBuilder sb, Object a, Object b, Object c, long value) {
+                sb.append("Pacman has ").append(value).append(" pacmanLives left.");
+            }
+        },
+        /**
+         * respawn of entity a requested
+         */
+        SPAWNING(Category.SPAWN, Level.INFO) {
+            @Override
+            void format(StringBuilder sb, Object a, Object b, Object c, long value) {
+                sb.append("Spawning new ").append(a);
+            }
+        },
+        /**
+         * a spawned at position b
+         */
+        SPAWNED(Category.SPAWN, Level.INFO) {
+            @Override
+            void format(StringBuilder sb, Object a, Object b, Object c, long value) {
+                sb.append(a).append(" spawned at ").append(b);
+            }
+        },
+        /**
+         * points in the high half of value, out of the total points in the low half
+         */
+        POINTS(Category.POINTS, Level.INFO) {
+            @Override
+            void format(StringBuilder sb, Object a, Object b, Object c, long value) {
+                sb.append("Points ").append((int) (value >>> 32)).append('/').append((int) value);
+            }
+        },
+        /**
+         * pacman a interrupted at position b
+         */
+        PACMAN_INTERRUPTED(Category.ENTITY, Level.DEBUG) {
+            @Override
+            void format(StringBuilder sb, Object a, Object b, Object c, long value) {
+                sb.append(a).append(" interrupted at position: ").append(b);
+            }
+        },
+        /**
+         * ghost a interrupted at position b
+         */
+        GHOST_INTERRUPTED(Category.ENTITY, Level.DEBUG) {
+            @Override
+            void format(StringBuilder sb, Object a, Object b, Object c, long value) {
+                sb.append(a).append(" interrupted at position ").append(b);
+            }
+        },
+        /**
+         * entity a moving at b (a ratio) of its configured rate, with a p99 move wait of value nanoseconds
+         */
+        STARVED(Category.WATCHDOG, Level.WARN) {
+            @Override
+            void format(StringBuilder sb, Object a, Object b, Object c, long value) {
+                sb.append("Watchdog: ").append(a).append(" starved, moving at ")
+                        .append(Math.round((Double) b * 100)).append("% of its rate, p99 move wait ")
+                        .append(value / 1000).append("us");
+            }
+        },
+        /**
+         * entity a, at position b, did not move for value milliseconds
+         */
+        STALLED(Category.WATCHDOG, Level.WARN) {
+            @Override
+            void format(StringBuilder sb, Object a, Object b, Object c, long value) {
+                sb.append("Watchdog: ").append(a).append(" stalled at ").append(b).append(", no move for ")
+                        .append(value).append("ms");
+            }
+        },
+        /**
+         * value threads, named a, deadlocked
+         */
+        DEADLOCK(Category.WATCHDOG, Level.WARN) {
+            @Override
+            void format(StringBuilder sb, Object a, Object b, Object c, long value) {
+                sb.append("Watchdog: ").append(value).append(" threads deadlocked: ").append(a);
+            }
+        };
+
+        public final Category category;
+        public final Level level;
+
+        Message(Category category, Level level) {
+            this.category = category;
+            this.level = level;
+        }
+
+        /**
+         * Formats a record of this message
+         *
+         * @param sb    to append to
+         * @param a     first argument
+         * @param b     second argument
+         * @param c     third argument
+         * @param value number argument
+         */
+        abstract void format(StringBuilder sb, Object a, Object b, Object c, long value);
+    }
+
+    private final PrintStream out;
+    private final int mask;
+    // ring slots, by sequence number modulo the capacity
+    private final Message[] messages;
+    private final Object[] as, bs, cs;
+    private final long[] values;
+    private final AtomicLongArray published; // sequence number written to each slot, once filled
+    private final AtomicLong next = new AtomicLong();
+    private final AtomicLong drained = new AtomicLong(); // first sequence number not printed yet
+    private final LongAdder dropped = new LongAdder(); // records dropped on a full ring, not reported yet
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile Thread drainer;
+    private volatile boolean parked = false; // set by the drainer before it parks
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final Condition drainedMore = flushLock.newCondition();
+    private volatile int flushers = 0; // threads waiting in flush, guarded by flushLock
+    private volatile int minimumLevel = Level.DEBUG.ordinal();
+    private volatile int muted = 0; // bit per muted category
+
+    /**
+     * Initializes a log printing to a stream
+     *
+     * @param out stream to print to
+     */
+    public EventLog(PrintStream out) {
+        this(out, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Initializes a log printing to a stream
+     *
+     * @param out      stream to print to
+     * @param capacity of the ring buffer, a power of two
+     */
+    public EventLog(PrintStream out, int capacity) {
+        assert out != null;
+        assert capacity > 0 && Integer.bitCount(capacity) == 1;
+
+        this.out = out;
+        this.mask = capacity - 1;
+        messages = new Message[capacity];
+        as = new Object[capacity];
+        bs = new Object[capacity];
+        cs = new Object[capacity];
+        values = new long[capacity];
+        published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++)
+            published.set(i, -1);
+    }
+
+    /**
+     * Sets the level of the messages that are printed
+     *
+     * @param level minimum level printed, OFF to print nothing
+     */
+    public void setLevel(Level level) {
+        assert level != null;
+
+        minimumLevel = level.ordinal();
+    }
+
+    /**
+     * Mutes, or unmutes, the messages of a category
+     *
+     * @param category of the messages
+     * @param mute     true to discard its messages
+     */
+    public synchronized void mute(Category category, boolean mute) {
+        assert category != null;
+
+        int bit = 1 << category.ordinal();
+        muted = mute ? muted | bit : muted & ~bit;
+    }
+
+    /**
+     * Checks if a message would be printed
+     *
+     * @param message to check
+     * @return true if neither below the log level nor muted
+     */
+    public boolean enabled(Message message) {
+        return message.level.ordinal() >= minimumLevel && (muted & 1 << message.category.ordinal()) == 0;
+    }
+
+    /**
+     * Logs a message with one argument
+     *
+     * @param message logged
+     * @param a       argument
+     */
+    public void log(Message message, Object a) {
+        log(message, a, null, null, 0);
+    }
+
+    /**
+     * Logs a message with a number argument
+     *
+     * @param message logged
+     * @param value   argument
+     */
+    public void log(Message message, long value) {
+        log(message, null, null, null, value);
+    }
+
+    /**
+     * Logs a message. Does not allocate and never waits: the record is dropped if the ring is full.
+     *
+     * @param message logged
+     * @param a       first argument, null if none
+     * @param b       second argument, null if none
+     * @param c       third argument, null if none
+     * @param value   int argument
+     */
+    public void log(Message message, Object a, Object b, Object c, long value) {
+        assert message != null;
+
+        if (!enabled(message))
+            return;
+        if (!started.get() && started.compareAndSet(false, true))
+            startDrainer();
+
+        long sequence;
+        do {
+            sequence = next.get();
+            if (sequence - drained.get() > mask) { // ring full, the console is behind
+                dropped.increment();
+                return;
+            }
+        } while (!next.compareAndSet(sequence, sequence + 1));
+
+        int slot = (int) (sequence & mask);
+        messages[slot] = message;
+        as[slot] = a;
+        bs[slot] = b;
+        cs[slot] = c;
+        values[slot] = value;
+        published.set(slot, sequence); // publishes the slot to the drainer
+
+        // read after the slot is published: either the drainer sees the slot before parking, or it is unparked here
+        if (parked)
+            LockSupport.unpark(drainer);
+    }
+
+    /**
+     * Waits until every message logged so far is printed
+     */
+    public void flush() {
+        long last = next.get();
+        if (drained.get() >= last)
+            return;
+
+        flushLock.lock();
+        try {
+            flushers++;
+            while (drained.get() < last)
+                drainedMore.await();
+        } catch (InterruptedException e) {
+            throw new ThreadInterruptedException(e);
+        } finally {
+            flushers--;
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Starts the drainer thread
+     */
+    private void startDrainer() {
+        CThread thread = new CThread(this::drainForever);
+        thread.setName("logger");
+        thread.setDaemon(true);
+        drainer = thread;
+        thread.start();
+    }
+
+    /**
+     * Drainer thread: prints the records, in sequence order, as they are published
+     */
+    private void drainForever() {
+        StringBuilder sb = new StringBuilder(128);
+        long sequence = drained.get();
+
+        //noinspection InfiniteLoopStatement
+        while (true) {
+            int slot = (int) (sequence & mask);
+            if (published.get(slot) != sequence) {
+                reportDropped();
+                out.flush();
+                park(slot, sequence);
+                continue;
+            }
+
+            sb.setLength(0);
+            messages[slot].format(sb, as[slot], bs[slot], cs[slot], values[slot]);
+            as[slot] = bs[slot] = cs[slot] = null; // the game may release them
+
+            out.println(sb);
+            drained.set(++sequence); // frees the slot for the producers
+
+            if ((sequence & mask) == 0) // once per lap of the ring, when the log never goes idle
+                reportDropped();
+
+            if (flushers > 0)
+                signalFlushers();
+        }
+    }
+
+    /**
+     * Drainer thread: prints how many records were dropped since the last report, if any
+     */
+    private void reportDropped() {
+        long lost = dropped.sumThenReset();
+        if (lost > 0)
+            out.println("Log ring full, " + lost + " messages dropped");
+    }
+
+    /**
+     * Drainer thread: parks until the next record is published
+     *
+     * @param slot     of the next record
+     * @param sequence of the next record
+     */
+    private void park(int slot, long sequence) {
+        parked = true;
+        // checked again once parked is set: a producer publishing after this check sees parked and unparks
+        while (published.get(slot) != sequence)
+            LockSupport.park(this);
+        parked = false;
+    }
+
+    /**
+     * Wakes up the threads waiting in flush, to check the records printed
+     */
+    private void signalFlushers() {
+        flushLock.lock();
+        try {
+            drainedMore.signalAll();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package pacman.other;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Sequential reader of an {@link EventJournal}.
+ * A cursor over the records, in journal order: {@link #next()} moves to the following record and the accessors read
+ * its fields, so reading does not allocate. Slots that were claimed but never written, by a game that did not close
+ * its journal, are skipped.
+ */
+public class JournalReader implements AutoCloseable {
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final int columns, lines;
+    private final long startTime;
+    private final long records; // slots to read
+    private long slot = 0;
+    private MappedByteBuffer segment;
+    private int segmentIndex = -1;
+    private int at;
+    private EventJournal.Event event;
+
+    /**
+     * Opens a journal
+     *
+     * @param path of the journal file
+     */
+    public JournalReader(String path) {
+        assert path != null;
+
+        try {
+            file = new RandomAccessFile(path, "r");
+            channel = file.getChannel();
+
+            map(0);
+            if (segment.getInt(0) != EventJournal.MAGIC || segment.getInt(4) != EventJournal.VERSION)
+                throw new IllegalArgumentException(path + " is not a journal");
+
+            columns = segment.getInt(8);
+            lines = segment.getInt(12);
+            startTime = segment.getLong(16);
+
+            long closed = segment.getLong(24);
+            // a journal that was not closed is read up to its end
+            records = closed > 0 ? closed : channel.size() / EventJournal.RECORD_SIZE - 1;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to read journal " + path, e);
+        }
+    }
+
+    /**
+     * Moves to the next record
+     *
+     * @return false if there are no more records
+     */
+    public boolean next() {
+        while (slot < records) {
+            long offset = ++slot * EventJournal.RECORD_SIZE;
+            map((int) (offset >>> EventJournal.SEGMENT_SHIFT));
+            at = (int) (offset & (EventJournal.SEGMENT_SIZE - 1));
+
+            event = EventJournal.Event.of(segment.get(at + 8));
+            if (event != null)
+                return true;
+        }
+
+        event = null;
+        return false;
+    }
+
+    /**
+     * Event of the current record
+     *
+     * @return event
+     */
+    public EventJournal.Event event() {
+        assert event != null;
+        return event;
+    }
+
+    /**
+     * Game time of the current record
+     *
+     * @return time in milliseconds
+     */
+    public long time() {
+        return segment.getLong(at);
+    }
+
+    /**
+     * Road symbol of the current record
+     *
+     * @return symbol, '\0' if none
+     */
+    public char symbol() {
+        return segment.getChar(at + 10);
+    }
+
+    /**
+     * Entity of the current record
+     *
+     * @return entity id, -1 if none
+     */
+    public int entity() {
+        return segment.getInt(at + 12);
+    }
+
+    /**
+     * Other entity of the current record
+     *
+     * @return entity id, -1 if none
+     */
+    public int other() {
+        return segment.getInt(at + 16);
+    }
+
+    /**
+     * Cell the current record starts from
+     *
+     * @return cell index, -1 if none
+     */
+    public int from() {
+        return segment.getInt(at + 20);
+    }
+
+    /**
+     * Cell of the current record
+     *
+     * @return cell index, -1 if none
+     */
+    public int to() {
+        return segment.getInt(at + 24);
+    }
+
+    /**
+     * Event specific value of the current record
+     *
+     * @return value
+     */
+    public int value() {
+        return segment.getInt(at + 28);
+    }
+
+    /**
+     * Columns of the recorded board
+     *
+     * @return number of columns
+     */
+    public int columns() {
+        return columns;
+    }
+
+    /**
+     * Lines of the recorded board
+     *
+     * @return number of lines
+     */
+    public int lines() {
+        return lines;
+    }
+
+    /**
+     * Game time when recording started
+     *
+     * @return time in milliseconds
+     */
+    public long startTime() {
+        return startTime;
+    }
+
+    /**
+     * Current record as text
+     *
+     * @return description of the record
+     */
+    public String describe() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(time() - startTime).append("ms ").append(event());
+        if (entity() >= 0)
+            sb.append(" entity=").append(entity());
+        if (other() >= 0)
+            sb.append(" other=").append(other());
+        if (from() >= 0)
+            sb.append(" from=").append(cell(from()));
+        if (to() >= 0)
+            sb.append(" to=").append(cell(to()));
+        if (symbol() != '\0')
+            sb.append(" symbol='").append(symbol()).append('\'');
+        sb.append(" value=").append(value());
+        return sb.toString();
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+            file.close();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to close journal", e);
+        }
+    }
+
+    /**
+     * Position of a cell, as column and line
+     *
+     * @param cell index
+     * @return (x,y) text
+     */
+    private String cell(int cell) {
+        return "(" + cell % columns + "," + cell / columns + ")";
+    }
+
+    /**
+     * Maps a segment of the journal, unless already mapped
+     *
+     * @param index of the segment
+     */
+    private void map(int index) {
+        if (index == segmentIndex)
+            return;
+
+        try {
+            long position = index * EventJournal.SEGMENT_SIZE;
+            segment = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                    Math.min(EventJournal.SEGMENT_SIZE, channel.size() - position));
+            segmentIndex = index;
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to map journal segment " + index, e);
+        }
+    }
+}
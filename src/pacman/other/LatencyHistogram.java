@@ -0,0 +1,88 @@
+package pacman.other;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrent histogram of durations with power of two buckets.
+ * Recording is a couple of striped counter increments, so it can be used on every move. Percentiles are upper
+ * bounds of the bucket they fall in, which is at most twice the real value.
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKETS = 64;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder total = new LongAdder();
+
+    /**
+     * Initializes an empty histogram
+     */
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++)
+            buckets[i] = new LongAdder();
+    }
+
+    /**
+     * Records a duration
+     *
+     * @param nanos duration in nanoseconds, negative values count as zero
+     */
+    public void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+
+        // bucket b holds durations in [2^(b-1), 2^b)
+        buckets[64 - Long.numberOfLeadingZeros(nanos)].increment();
+        total.add(nanos);
+    }
+
+    /**
+     * Number of recorded durations
+     *
+     * @return count
+     */
+    public long count() {
+        long count = 0;
+        for (LongAdder bucket : buckets)
+            count += bucket.sum();
+
+        return count;
+    }
+
+    /**
+     * Mean of the recorded durations
+     *
+     * @return mean in nanoseconds, 0 if empty
+     */
+    public long mean() {
+        long count = count();
+        return count == 0 ? 0 : total.sum() / count;
+    }
+
+    /**
+     * Approximate percentile of the recorded durations
+     *
+     * @param percentile between 0 and 100
+     * @return upper bound of the percentile in nanoseconds, 0 if empty
+     */
+    public long percentile(double percentile) {
+        assert percentile >= 0 && percentile <= 100;
+
+        long[] counts = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            count += counts[i];
+        }
+
+        long rank = (long) Math.ceil(count * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank && seen > 0)
+                return i == 0 ? 0 : (i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << i) - 1);
+        }
+
+        return 0;
+    }
+}
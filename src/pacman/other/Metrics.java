@@ -0,0 +1,270 @@
+package pacman.other;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.lang.System.out;
+
+/**
+ * Runtime metrics of a game: moves, collisions, kills, spawns, attack modes and how long the game takes to stop.
+ * Counters are striped so entities update them concurrently at low cost. Each game controller keeps its own
+ * metrics, registered in the platform MBean server as pacman:type=Metrics,name=game&lt;n&gt;.
+ */
+public class Metrics implements MetricsMXBean {
+
+    private static final AtomicInteger games = new AtomicInteger();
+
+    private final long startNanos = System.nanoTime();
+    private final LongAdder pacmanMoves = new LongAdder();
+    private final LongAdder ghostMoves = new LongAdder();
+    private final LongAdder collisions = new LongAdder();
+    private final LongAdder pacmanKills = new LongAdder();
+    private final LongAdder ghostKills = new LongAdder();
+    private final LongAdder spawns = new LongAdder();
+    private final LongAdder recycled = new LongAdder();
+    private final LongAdder attackActivations = new LongAdder();
+    private final LatencyHistogram moveWait = new LatencyHistogram();
+    private final LatencyHistogram spawnLatency = new LatencyHistogram();
+    private final AtomicInteger runningEntities = new AtomicInteger();
+    private volatile long endNanos = 0;
+    private volatile long shutdownNanos = -1;
+    private ObjectName name;
+
+    /**
+     * Registers the metrics in the platform MBean server. Failing to register is reported and otherwise ignored.
+     */
+    public synchronized void register() {
+        assert name == null;
+
+        try {
+            name = new ObjectName("pacman:type=Metrics,name=game" + games.incrementAndGet());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+        } catch (JMException e) {
+            out.println("Unable to register metrics: " + e.getMessage());
+            name = null;
+        }
+    }
+
+    /**
+     * Removes the metrics from the platform MBean server, if registered
+     */
+    public synchronized void unregister() {
+        if (name == null)
+            return;
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            out.println("Unable to unregister metrics: " + e.getMessage());
+        }
+        name = null;
+    }
+
+    /**
+     * An entity moved
+     *
+     * @param ghost       if the entity is a ghost
+     * @param waitedNanos time waited to lock the cells of the move
+     */
+    public void moved(boolean ghost, long waitedNanos) {
+        (ghost ? ghostMoves : pacmanMoves).increment();
+        moveWait.record(waitedNanos);
+    }
+
+    /**
+     * An entity moved into an occupied cell
+     */
+    public void collision() {
+        collisions.increment();
+    }
+
+    /**
+     * A pacman or a ghost was killed
+     *
+     * @param ghost if the killed entity is a ghost
+     */
+    public void killed(boolean ghost) {
+        (ghost ? ghostKills : pacmanKills).increment();
+    }
+
+    /**
+     * A killed entity was respawned
+     *
+     * @param nanos time from the kill to the respawn, including the respawn delay
+     */
+    public void spawned(long nanos) {
+        spawns.increment();
+        spawnLatency.record(nanos);
+    }
+
+    /**
+     * A killed entity was recycled instead of being replaced by a new one
+     */
+    public void recycled() {
+        recycled.increment();
+    }
+
+    /**
+     * Pacman ate a bonus and the ghosts went into attack mode
+     */
+    public void attackActivated() {
+        attackActivations.increment();
+    }
+
+    /**
+     * An entity thread started
+     */
+    public void entityStarted() {
+        runningEntities.incrementAndGet();
+    }
+
+    /**
+     * An entity thread stopped. The last one to stop after the game ended sets the shutdown time.
+     */
+    public void entityStopped() {
+        if (runningEntities.decrementAndGet() == 0 && endNanos != 0)
+            shutdownNanos = System.nanoTime() - endNanos;
+    }
+
+    /**
+     * The game ended, entities are about to be interrupted
+     */
+    public void gameEnded() {
+        endNanos = System.nanoTime();
+
+        if (runningEntities.get() == 0)
+            shutdownNanos = 0;
+    }
+
+    /**
+     * All metrics, in a stable order
+     *
+     * @return metric names and values
+     */
+    public Map<String, Number> snapshot() {
+        Map<String, Number> values = new LinkedHashMap<>();
+        values.put("uptimeMillis", getUptimeMillis());
+        values.put("pacmanMoves", getPacmanMoves());
+        values.put("ghostMoves", getGhostMoves());
+        values.put("moveWaitMeanNanos", getMoveWaitMeanNanos());
+        values.put("moveWaitP99Nanos", getMoveWaitP99Nanos());
+        values.put("collisions", getCollisions());
+        values.put("pacmanKills", getPacmanKills());
+        values.put("ghostKills", getGhostKills());
+        values.put("spawns", getSpawns());
+        values.put("spawnMeanNanos", getSpawnMeanNanos());
+        values.put("spawnP99Nanos", getSpawnP99Nanos());
+        values.put("recycledEntities", getRecycledEntities());
+        values.put("attackActivations", getAttackActivations());
+        values.put("runningEntities", getRunningEntities());
+        values.put("shutdownMillis", getShutdownMillis());
+        return values;
+    }
+
+    @Override
+    public long getUptimeMillis() {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    @Override
+    public long getPacmanMoves() {
+        return pacmanMoves.sum();
+    }
+
+    @Override
+    public long getGhostMoves() {
+        return ghostMoves.sum();
+    }
+
+    @Override
+    public double getPacmanMovesPerSecond() {
+        return perSecond(getPacmanMoves());
+    }
+
+    @Override
+    public double getGhostMovesPerSecond() {
+        return perSecond(getGhostMoves());
+    }
+
+    @Override
+    public long getMoveWaitMeanNanos() {
+        return moveWait.mean();
+    }
+
+    @Override
+    public long getMoveWaitP99Nanos() {
+        return moveWait.percentile(99);
+    }
+
+    @Override
+    public long getCollisions() {
+        return collisions.sum();
+    }
+
+    @Override
+    public long getPacmanKills() {
+        return pacmanKills.sum();
+    }
+
+    @Override
+    public long getGhostKills() {
+        return ghostKills.sum();
+    }
+
+    @Override
+    public long getSpawns() {
+        return spawns.sum();
+    }
+
+    @Override
+    public double getSpawnsPerSecond() {
+        return perSecond(getSpawns());
+    }
+
+    @Override
+    public long getRecycledEntities() {
+        return recycled.sum();
+    }
+
+    @Override
+    public long getSpawnMeanNanos() {
+        return spawnLatency.mean();
+    }
+
+    @Override
+    public long getSpawnP99Nanos() {
+        return spawnLatency.percentile(99);
+    }
+
+    @Override
+    public long getAttackActivations() {
+        return attackActivations.sum();
+    }
+
+    @Override
+    public int getRunningEntities() {
+        return runningEntities.get();
+    }
+
+    @Override
+    public long getShutdownMillis() {
+        long nanos = shutdownNanos;
+        return nanos < 0 ? -1 : nanos / 1_000_000;
+    }
+
+    /**
+     * Rate of a counter since the metrics were created
+     *
+     * @param count of the counter
+     * @return count per second
+     */
+    private double perSecond(long count) {
+        long elapsed = System.nanoTime() - startNanos;
+        return elapsed == 0 ? 0 : count * 1e9 / elapsed;
+    }
+}
@@ -0,0 +1,43 @@
+package pacman.other;
+
+/**
+ * Management interface of the game metrics, as exposed through JMX
+ */
+public interface MetricsMXBean {
+
+    long getUptimeMillis();
+
+    long getPacmanMoves();
+
+    long getGhostMoves();
+
+    double getPacmanMovesPerSecond();
+
+    double getGhostMovesPerSecond();
+
+    long getMoveWaitMeanNanos();
+
+    long getMoveWaitP99Nanos();
+
+    long getCollisions();
+
+    long getPacmanKills();
+
+    long getGhostKills();
+
+    long getSpawns();
+
+    double getSpawnsPerSecond();
+
+    long getRecycledEntities();
+
+    long getSpawnMeanNanos();
+
+    long getSpawnP99Nanos();
+
+    long getAttackActivations();
+
+    int getRunningEntities();
+
+    long getShutdownMillis();
+}
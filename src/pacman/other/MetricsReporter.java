@@ -0,0 +1,114 @@
+package pacman.other;
+
+import pt.ua.concurrent.CThread;
+import pt.ua.concurrent.ThreadInterruptedException;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Map;
+
+import static java.lang.System.out;
+
+/**
+ * Periodically appends the game metrics to a file, as CSV rows or as JSON lines depending on the file extension
+ * (.json for JSON, anything else for CSV). Each row also has the move and spawn rates of the last period.
+ * Runs as a daemon, it does not keep the game alive.
+ */
+public class MetricsReporter extends CThread {
+
+    private final Metrics metrics;
+    private final String path;
+    private final int periodMillis;
+    private final boolean json;
+    private long lastPacmanMoves = 0, lastGhostMoves = 0, lastSpawns = 0, lastUptime = 0;
+
+    /**
+     * Initializes a new metrics reporter
+     *
+     * @param metrics      to report
+     * @param path         of the file to append to
+     * @param periodMillis time between two reports
+     */
+    public MetricsReporter(Metrics metrics, String path, int periodMillis) {
+        assert metrics != null;
+        assert path != null;
+        assert periodMillis > 0;
+
+        this.metrics = metrics;
+        this.path = path;
+        this.periodMillis = periodMillis;
+        this.json = path.endsWith(".json");
+        setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+        try (PrintWriter writer = new PrintWriter(new FileWriter(path, true), true)) {
+            boolean header = !json;
+
+            try {
+                while (true) {
+                    pause(periodMillis);
+                    report(writer, header);
+                    header = false;
+                }
+            } catch (ThreadInterruptedException ex) {
+                report(writer, header); // last report when stopped
+            }
+        } catch (IOException e) {
+            out.println("Unable to write metrics to " + path + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stops the reporter, waiting for its last report to be written
+     */
+    public void finish() {
+        interrupt();
+        ajoin();
+    }
+
+    /**
+     * Writes one report
+     *
+     * @param writer to write to
+     * @param header if the CSV header must be written first
+     */
+    void report(PrintWriter writer, boolean header) {
+        Map<String, Number> values = metrics.snapshot();
+
+        long uptime = values.get("uptimeMillis").longValue();
+        long pacmanMoves = values.get("pacmanMoves").longValue();
+        long ghostMoves = values.get("ghostMoves").longValue();
+        long spawns = values.get("spawns").longValue();
+        double seconds = Math.max(1, uptime - lastUptime) / 1000.0;
+        values.put("pacmanMovesPerSecond", Math.round((pacmanMoves - lastPacmanMoves) / seconds));
+        values.put("ghostMovesPerSecond", Math.round((ghostMoves - lastGhostMoves) / seconds));
+        values.put("spawnsPerSecond", Math.round((spawns - lastSpawns) / seconds));
+        lastUptime = uptime;
+        lastPacmanMoves = pacmanMoves;
+        lastGhostMoves = ghostMoves;
+        lastSpawns = spawns;
+
+        StringBuilder line = new StringBuilder();
+        if (json) {
+            line.append('{');
+            for (Map.Entry<String, Number> entry : values.entrySet()) {
+                if (line.length() > 1) line.append(',');
+                line.append('"').append(entry.getKey()).append("\":").append(entry.getValue());
+            }
+            line.append('}');
+        } else {
+            if (header)
+                writer.println(String.join(",", values.keySet()));
+
+            for (Number value : values.values()) {
+                if (line.length() > 0) line.append(',');
+                line.append(value);
+            }
+        }
+
+        writer.println(line);
+    }
+}
@@ -0,0 +1,96 @@
+package pacman.other;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Move statistics of one entity: moves committed, game time of the last one and a histogram of the time its moves
+ * waited for their cells. Moves of an entity are committed one at a time, so there is a single writer and recording
+ * is a few plain increments, without the striped counters of {@link LatencyHistogram}, which keeps one per entity
+ * cheap even with thousands of entities. Readers, such as the watchdog, see values at most one move behind.
+ */
+public class MoveStats {
+
+    private static final int BUCKETS = 64;
+
+    private final AtomicLongArray waits = new AtomicLongArray(BUCKETS); // bucket b holds [2^(b-1), 2^b) nanoseconds
+    private volatile long moves = 0;
+    private volatile long lastMove = 0; // game time in milliseconds
+    private volatile long started = 0;
+
+    /**
+     * The entity started, or started again after a respawn
+     *
+     * @param now game time in milliseconds
+     */
+    public void started(long now) {
+        started = now;
+        lastMove = now;
+    }
+
+    /**
+     * A move of the entity was committed. Called by one thread at a time.
+     *
+     * @param now         game time in milliseconds
+     * @param waitedNanos time the move waited for its cells
+     */
+    public void committed(long now, long waitedNanos) {
+        int bucket = 64 - Long.numberOfLeadingZeros(Math.max(0, waitedNanos));
+        waits.lazySet(bucket, waits.get(bucket) + 1);
+        lastMove = now;
+        moves = moves + 1; // single writer, publishes the move
+    }
+
+    /**
+     * Moves committed since the entity was created
+     *
+     * @return moves
+     */
+    public long moves() {
+        return moves;
+    }
+
+    /**
+     * Game time of the last committed move, or of the start if the entity did not move since
+     *
+     * @return game time in milliseconds
+     */
+    public long lastMove() {
+        return lastMove;
+    }
+
+    /**
+     * Game time the entity last started
+     *
+     * @return game time in milliseconds
+     */
+    public long started() {
+        return started;
+    }
+
+    /**
+     * Approximate percentile of the time the moves waited for their cells
+     *
+     * @param percentile between 0 and 100
+     * @return upper bound of the percentile in nanoseconds, 0 if the entity never moved
+     */
+    public long waitPercentile(double percentile) {
+        assert percentile >= 0 && percentile <= 100;
+
+        long[] counts = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = waits.get(i);
+            count += counts[i];
+        }
+
+        long rank = (long) Math.ceil(count * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank && seen > 0)
+                return i == 0 ? 0 : (i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << i) - 1);
+        }
+
+        return 0;
+    }
+}
@@ -0,0 +1,381 @@
+package pacman.other;
+
+import pt.ua.concurrent.CThread;
+import pt.ua.concurrent.ThreadInterruptedException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Hashed timer wheel owning the timers of a game.
+ * Timers have an absolute deadline in game time and are kept in the slot of their deadline, so scheduling, extending
+ * and cancelling a timer take constant time. Expired timers run their action outside of the wheel lock.
+ * The wheel is either driven by one daemon driver thread, that sleeps until the next deadline and not at all while
+ * there are no timers, or advanced by hand (tick mode, where game time is simulated).
+ */
+public class TimerWheel {
+
+    private static final int SLOTS = 512;
+    private static final int MASK = SLOTS - 1;
+
+    private final LongSupplier clock;
+    // a lock and not the wheel monitor, so entities on virtual threads scheduling timers do not pin their carrier
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition(); // a timer was scheduled before the driver wakes up
+    private final int resolution;
+    private final Timer[] slots = new Timer[SLOTS]; // head of a doubly linked list per slot
+    private final Timer[] tails = new Timer[SLOTS];
+    private long processedTick; // every tick up to this one was processed
+    private int pending = 0;
+    private long wakeAt = Long.MAX_VALUE; // when the driver plans to wake up
+    private CThread driver;
+    private boolean stopped = false;
+
+    /**
+     * A timer of the wheel. All its state is guarded by the wheel lock.
+     */
+    public class Timer {
+
+        private final Runnable action;
+        private long deadline;
+        private boolean expired = false, cancelled = false;
+        private Timer previous, next;
+        private int slot = -1;
+
+        private Timer(Runnable action, long deadline) {
+            this.action = action;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Postpones the deadline of a pending timer
+         *
+         * @param millis to add to the deadline
+         * @return true if extended, false if the timer already expired or was cancelled
+         */
+        public boolean extend(long millis) {
+            assert millis >= 0;
+
+            lock.lock();
+            try {
+                if (expired || cancelled)
+                    return false;
+
+                unlink(this);
+                deadline += millis;
+                link(this);
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Cancels a pending timer
+         *
+         * @return true if cancelled, false if the timer already expired or was cancelled
+         */
+        public boolean cancel() {
+            lock.lock();
+            try {
+                if (expired || cancelled)
+                    return false;
+
+                unlink(this);
+                cancelled = true;
+                pending--;
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Checks if the timer expired (its action ran or is about to run)
+         *
+         * @return true if expired
+         */
+        public boolean expired() {
+            lock.lock();
+            try {
+                return expired;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Deadline of the timer
+         *
+         * @return game time in milliseconds
+         */
+        public long deadline() {
+            lock.lock();
+            try {
+                return deadline;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Initializes a new timer wheel
+     *
+     * @param clock      game time in milliseconds
+     * @param resolution milliseconds per slot
+     */
+    public TimerWheel(LongSupplier clock, int resolution) {
+        assert clock != null;
+        assert resolution > 0;
+
+        this.clock = clock;
+        this.resolution = resolution;
+        this.processedTick = clock.getAsLong() / resolution - 1;
+    }
+
+    /**
+     * Starts the driver thread, that runs the timers as they expire on the wall clock
+     */
+    public void startDriver() {
+        lock.lock();
+        try {
+            assert driver == null;
+
+            driver = new CThread(this::drive, "timers");
+            driver.setDaemon(true);
+            driver.start();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Schedules a new timer
+     *
+     * @param delay  from now, in milliseconds
+     * @param action to run when expired, must not block
+     * @return the timer
+     */
+    public Timer schedule(long delay, Runnable action) {
+        lock.lock();
+        try {
+            assert delay >= 0;
+            assert action != null;
+
+            Timer timer = new Timer(action, clock.getAsLong() + delay);
+
+            if (stopped) {
+                timer.cancelled = true;
+                return timer;
+            }
+
+            link(timer);
+            pending++;
+
+            if (timer.deadline < wakeAt)
+                changed.signal(); // the driver sleeps past the new deadline
+
+            return timer;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs the timers that expired up to a given time, in deadline order.
+     * Used to drive the wheel by hand, when there is no driver thread.
+     *
+     * @param now game time in milliseconds
+     */
+    public void advance(long now) {
+        for (Timer timer : expire(now))
+            timer.action.run();
+    }
+
+    /**
+     * Deadline of the next pending timer
+     *
+     * @return game time in milliseconds, Long.MAX_VALUE if there are no timers
+     */
+    public long nextDeadline() {
+        lock.lock();
+        try {
+            if (pending == 0)
+                return Long.MAX_VALUE;
+
+            // first slot, in this rotation of the wheel, with a timer due in this rotation
+            for (long tick = processedTick + 1; tick <= processedTick + SLOTS; tick++) {
+                long earliest = Long.MAX_VALUE;
+                for (Timer timer = slots[(int) (tick & MASK)]; timer != null; timer = timer.next)
+                    if (timer.deadline / resolution <= tick)
+                        earliest = Math.min(earliest, timer.deadline);
+
+                if (earliest != Long.MAX_VALUE)
+                    return earliest;
+            }
+
+            // every timer is more than a rotation away
+            long earliest = Long.MAX_VALUE;
+            for (Timer head : slots)
+                for (Timer timer = head; timer != null; timer = timer.next)
+                    earliest = Math.min(earliest, timer.deadline);
+
+            return earliest;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Cancels every pending timer and stops the driver. Timers scheduled afterwards never run.
+     */
+    public void stop() {
+        lock.lock();
+        try {
+            stopped = true;
+
+            for (int i = 0; i < SLOTS; i++) {
+                for (Timer timer = slots[i]; timer != null; timer = timer.next)
+                    timer.cancelled = true;
+                slots[i] = null;
+                tails[i] = null;
+            }
+            pending = 0;
+
+            if (driver != null)
+                driver.interrupt();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Driver thread: runs the timers as they expire, until stopped
+     */
+    private void drive() {
+        try {
+            //noinspection InfiniteLoopStatement
+            while (true)
+                for (Timer timer : awaitExpired())
+                    timer.action.run();
+        } catch (ThreadInterruptedException ex) {
+            // stopped
+        }
+    }
+
+    /**
+     * Waits for timers to expire
+     *
+     * @return expired timers, at least one
+     */
+    private List<Timer> awaitExpired() {
+        lock.lock();
+        try {
+            while (true) {
+                long now = clock.getAsLong();
+                List<Timer> expired = expire(now);
+                if (!expired.isEmpty()) {
+                    wakeAt = Long.MAX_VALUE;
+                    return expired;
+                }
+
+                wakeAt = nextDeadline();
+                if (wakeAt == Long.MAX_VALUE)
+                    changed.await(); // no timers, no wakeups
+                else
+                    changed.await(Math.max(1, wakeAt - now), TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            throw new ThreadInterruptedException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the timers that expired up to a given time
+     *
+     * @param now game time in milliseconds
+     * @return expired timers, in deadline order
+     */
+    private List<Timer> expire(long now) {
+        lock.lock();
+        try {
+            List<Timer> expired = new ArrayList<>();
+            if (pending == 0) {
+                processedTick = Math.max(processedTick, now / resolution - 1);
+                return expired;
+            }
+
+            long last = now / resolution;
+            long from = Math.max(processedTick + 1, last - SLOTS + 1); // no need to visit a slot twice
+
+            for (long tick = from; tick <= last; tick++) {
+                Timer timer = slots[(int) (tick & MASK)];
+                while (timer != null) {
+                    Timer next = timer.next;
+                    if (timer.deadline <= now) {
+                        unlink(timer);
+                        timer.expired = true;
+                        pending--;
+                        expired.add(timer);
+                    }
+                    timer = next;
+                }
+            }
+
+            // the current tick may still get timers due later in it, it is visited again next time
+            processedTick = Math.max(processedTick, last - 1);
+
+            expired.sort((a, b) -> Long.compare(a.deadline, b.deadline));
+            return expired;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds a timer to the slot of its deadline, or to the next slot to process if its deadline already passed
+     *
+     * @param timer to add
+     */
+    private void link(Timer timer) {
+        long tick = Math.max(timer.deadline / resolution, processedTick + 1);
+        int slot = (int) (tick & MASK);
+
+        // appended, so timers with the same deadline expire in the order they were scheduled
+        timer.slot = slot;
+        timer.next = null;
+        timer.previous = tails[slot];
+        if (tails[slot] == null)
+            slots[slot] = timer;
+        else
+            tails[slot].next = timer;
+        tails[slot] = timer;
+    }
+
+    /**
+     * Removes a timer from its slot
+     *
+     * @param timer to remove
+     */
+    private void unlink(Timer timer) {
+        if (timer.previous != null)
+            timer.previous.next = timer.next;
+        else
+            slots[timer.slot] = timer.next;
+
+        if (timer.next != null)
+            timer.next.previous = timer.previous;
+        else
+            tails[timer.slot] = timer.previous;
+
+        timer.previous = timer.next = null;
+        timer.slot = -1;
+    }
+}
@@ -1,6 +1,6 @@
 /**
  * Pacman game simulation that includes concurrency.
- * Ghosts and Pacman are active entities that interact with GameControlled shared class, fully synchronized.
- * Game controller includes synchronization points where is possible wait for a game to end or where ghosts wait for attack mode to end.
+ * Ghosts and Pacman are active entities that interact with GameControlled shared class, synchronized per board cell.
+ * Game controller includes a synchronization point where is possible wait for a game to end. Ghosts read the shared attack mode without locks.
  */
-package pacman;
\ No newline at end of file
+package pacman;
@@ -0,0 +1,75 @@
+package pacman.passive;
+
+/**
+ * Attack mode shared by all the ghosts.
+ * Pacman eating a bonus starts, or extends, the attack mode of every ghost already in the game. Ghosts read their
+ * frightened state, slowdown and blinking from this phase instead of keeping their own timers, so a bonus costs the
+ * same no matter how many ghosts there are. Reads are lock-free; the phase is only changed under the game lock of the
+ * game controller.
+ */
+public class AttackPhase {
+
+    // number of bonuses eaten, shifted left, with the lowest bit set while the attack mode is on
+    private volatile long state = 0;
+    // game time the current attack mode started
+    private volatile long start = 0;
+
+    /**
+     * A bonus was eaten: starts the attack mode, or keeps it on if already started
+     *
+     * @param now game time in milliseconds
+     */
+    void bonus(long now) {
+        long current = state;
+
+        if ((current & 1) == 0)
+            start = now; // written before state, readers read state first
+
+        state = ((current >> 1) + 1) << 1 | 1;
+    }
+
+    /**
+     * Ends the attack mode
+     */
+    void end() {
+        state = state & ~1L;
+    }
+
+    /**
+     * Checks if the attack mode is on
+     *
+     * @return true if on
+     */
+    public boolean active() {
+        return (state & 1) != 0;
+    }
+
+    /**
+     * Number of bonuses eaten since the game started
+     *
+     * @return bonuses
+     */
+    public long bonuses() {
+        return state >> 1;
+    }
+
+    /**
+     * Checks if a ghost is frightened. Ghosts are only frightened by bonuses eaten after they entered the game.
+     *
+     * @param joined number of bonuses eaten when the ghost entered the game
+     * @return true if frightened
+     */
+    public boolean frightens(long joined) {
+        long current = state;
+        return (current & 1) != 0 && (current >> 1) > joined;
+    }
+
+    /**
+     * Game time the current attack mode started
+     *
+     * @return time in milliseconds
+     */
+    public long start() {
+        return start;
+    }
+}
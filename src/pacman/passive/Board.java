@@ -0,0 +1,283 @@
+package pacman.passive;
+
+import java.awt.*;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Pure in-memory board model.
+ * Loads the same text format as GBoard's Labyrinth but has no rendering at all, so it can be used on display-less
+ * machines. A rendering view can be attached as an observer.
+ * Boards of any size are loaded by streaming the file, and every per cell store is a flat array indexed by
+ * line * numberOfColumns + column, so memory grows linearly with the number of cells.
+ * The static layout is kept apart in an immutable {@link Topology}, queried without locks.
+ * This class is not synchronized, callers are responsible for guarding the road symbols.
+ */
+public class Board {
+
+    public final int numberOfLines;
+    public final int numberOfColumns;
+    private final String path;
+    private final char[] roadSymbols;
+    private final Topology topology;
+    private final char[] cells;
+    private final List<BoardObserver> observers = new CopyOnWriteArrayList<>();
+
+    /**
+     * Loads a new board
+     *
+     * @param path        of the board file
+     * @param roadSymbols symbols that are roads, in addition to ' '
+     */
+    public Board(String path, char[] roadSymbols) {
+        assert path != null;
+        assert roadSymbols != null;
+
+        this.path = path;
+        this.roadSymbols = roadSymbols.clone();
+
+        // streamed twice, the first pass sizes the board, so no copy of the file is kept in memory
+        int lines = 0, columns = 0;
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(path))) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                lines++;
+                columns = Math.max(columns, line.length());
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to read board " + path, e);
+        }
+
+        if (lines == 0 || columns == 0)
+            throw new IllegalArgumentException("Board " + path + " is empty");
+        if ((long) lines * columns * 4 > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Board " + path + " is too large: " + columns + "x" + lines);
+
+        numberOfLines = lines;
+        numberOfColumns = columns;
+        boolean[] road = new boolean[numberOfLines * numberOfColumns];
+        cells = new char[numberOfLines * numberOfColumns];
+
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(path))) {
+            for (int l = 0; l < numberOfLines; l++) {
+                String line = reader.readLine();
+                if (line == null)
+                    throw new IllegalArgumentException("Board " + path + " changed while loading");
+
+                for (int c = 0; c < numberOfColumns; c++) {
+                    char symbol = c < line.length() ? line.charAt(c) : '_';
+                    road[l * numberOfColumns + c] = isRoadSymbol(symbol);
+                    cells[l * numberOfColumns + c] = symbol;
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to read board " + path, e);
+        }
+
+        topology = new Topology(numberOfLines, numberOfColumns, road, cells);
+    }
+
+    /**
+     * Static layout of the board, immutable
+     *
+     * @return topology
+     */
+    public Topology topology() {
+        return topology;
+    }
+
+    /**
+     * Path of the file that originated the board
+     *
+     * @return board path
+     */
+    public String path() {
+        return path;
+    }
+
+    /**
+     * Attaches an observer to the board
+     *
+     * @param observer to notify of board changes
+     */
+    public void attachObserver(BoardObserver observer) {
+        assert observer != null;
+
+        observers.add(observer);
+    }
+
+    /**
+     * Checks if the symbol is a road symbol
+     *
+     * @param symbol to check
+     * @return true if road
+     */
+    public boolean isRoadSymbol(char symbol) {
+        if (symbol == ' ')
+            return true;
+
+        for (char roadSymbol : roadSymbols)
+            if (roadSymbol == symbol)
+                return true;
+
+        return false;
+    }
+
+    /**
+     * Number of cells of the board
+     *
+     * @return lines times columns
+     */
+    public int numberOfCells() {
+        return cells.length;
+    }
+
+    /**
+     * Index of a position in the board cells
+     *
+     * @param line   of the position
+     * @param column of the position
+     * @return cell index
+     */
+    public int cellIndex(int line, int column) {
+        assert validPosition(line, column);
+
+        return line * numberOfColumns + column;
+    }
+
+    /**
+     * Road neighbour of a cell. Directions are 0: left, 1: down, 2: up, 3: right.
+     *
+     * @param cell      index of the cell
+     * @param direction of the neighbour
+     * @return index of the neighbour, -1 if outside of the board or not a road
+     */
+    public int neighbour(int cell, int direction) {
+        return topology.neighbour(cell, direction);
+    }
+
+    /**
+     * Checks if the position is inside the board
+     *
+     * @param line   of the position
+     * @param column of the position
+     * @return true if valid
+     */
+    public boolean validPosition(int line, int column) {
+        return topology.validPosition(line, column);
+    }
+
+    /**
+     * Checks if the position is a road
+     *
+     * @param line   of the position
+     * @param column of the position
+     * @return true if road
+     */
+    public boolean isRoad(int line, int column) {
+        return topology.isRoad(line, column);
+    }
+
+    /**
+     * Symbol currently on a road position
+     *
+     * @param line   of the position
+     * @param column of the position
+     * @return road symbol
+     */
+    public char roadSymbol(int line, int column) {
+        assert isRoad(line, column);
+
+        return cells[line * numberOfColumns + column];
+    }
+
+    /**
+     * Symbol currently on a road cell
+     *
+     * @param cell index of the cell
+     * @return road symbol
+     */
+    public char roadSymbol(int cell) {
+        assert topology.isRoad(cell);
+
+        return cells[cell];
+    }
+
+    /**
+     * Puts a symbol on a road position and notifies the observers
+     *
+     * @param line   of the position
+     * @param column of the position
+     * @param symbol to put
+     */
+    public void putRoadSymbol(int line, int column, char symbol) {
+        assert isRoad(line, column);
+
+        putRoadSymbol(line * numberOfColumns + column, symbol);
+    }
+
+    /**
+     * Puts a symbol on a road cell and notifies the observers
+     *
+     * @param cell   index of the cell
+     * @param symbol to put
+     */
+    public void putRoadSymbol(int cell, char symbol) {
+        assert topology.isRoad(cell);
+        assert isRoadSymbol(symbol);
+
+        cells[cell] = symbol;
+
+        for (BoardObserver observer : observers)
+            observer.cellChanged(cell / numberOfColumns, cell % numberOfColumns, symbol);
+    }
+
+    /**
+     * Positions of the road that currently hold a symbol
+     *
+     * @param symbol to look for
+     * @return array of positions (x is the column, y is the line)
+     */
+    public Point[] roadSymbolPositions(char symbol) {
+        assert isRoadSymbol(symbol) && symbol != ' ';
+
+        ArrayList<Point> positions = new ArrayList<>();
+        for (int l = 0; l < numberOfLines; l++)
+            for (int c = 0; c < numberOfColumns; c++)
+                if (topology.isRoad(l * numberOfColumns + c) && cells[l * numberOfColumns + c] == symbol)
+                    positions.add(new Point(c, l));
+
+        return positions.toArray(new Point[0]);
+    }
+
+    /**
+     * Number of road cells that currently hold a symbol
+     *
+     * @param symbol to look for
+     * @return number of cells
+     */
+    public int countRoadSymbol(char symbol) {
+        assert isRoadSymbol(symbol) && symbol != ' ';
+
+        int count = 0;
+        for (int cell = 0; cell < cells.length; cell++)
+            if (topology.isRoad(cell) && cells[cell] == symbol)
+                count++;
+
+        return count;
+    }
+
+    /**
+     * Notifies the observers of the pacman points
+     *
+     * @param points to notify
+     */
+    public void pointsChanged(int points) {
+        for (BoardObserver observer : observers)
+            observer.pointsChanged(points);
+    }
+}
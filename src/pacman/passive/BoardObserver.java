@@ -0,0 +1,24 @@
+package pacman.passive;
+
+/**
+ * Observer of a board model.
+ * Observers are notified of every change made to the board, for example to render it.
+ */
+public interface BoardObserver {
+
+    /**
+     * A road cell changed its symbol
+     *
+     * @param line   of the cell
+     * @param column of the cell
+     * @param symbol new road symbol
+     */
+    void cellChanged(int line, int column, char symbol);
+
+    /**
+     * Pacman points changed
+     *
+     * @param points new number of points
+     */
+    void pointsChanged(int points);
+}
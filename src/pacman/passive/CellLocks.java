@@ -0,0 +1,120 @@
+package pacman.passive;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Striped locks over the board cells.
+ * Each cell is guarded by one stripe (cell index modulo the number of stripes). Moves lock every cell they touch
+ * always in ascending stripe order, so two-cell moves and portal jumps can never deadlock each other.
+ * Fair stripes grant each cell to the movers in the order they asked for it, so a mover is never overtaken and its
+ * wait is bounded by the moves queued before it, at the cost of a handoff on every contended lock.
+ */
+class CellLocks implements MoveProtocol {
+
+    private static final int MAX_STRIPES = 4096;
+
+    private final ReentrantLock[] stripes;
+    private final int mask;
+
+    /**
+     * Initializes the stripes for a board
+     *
+     * @param numberOfCells of the board
+     * @param fair          if the stripes are granted in arrival order
+     */
+    CellLocks(int numberOfCells, boolean fair) {
+        assert numberOfCells > 0;
+
+        int size = 1;
+        while (size < numberOfCells && size < MAX_STRIPES)
+            size <<= 1;
+
+        stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++)
+            stripes[i] = new ReentrantLock(fair);
+
+        mask = size - 1;
+    }
+
+    /**
+     * Locks a single cell
+     *
+     * @param cell index of the cell
+     */
+    void lock(int cell) {
+        stripes[cell & mask].lock();
+    }
+
+    /**
+     * Unlocks a single cell
+     *
+     * @param cell index of the cell
+     */
+    void unlock(int cell) {
+        stripes[cell & mask].unlock();
+    }
+
+    /**
+     * Locks up to four cells in ascending stripe order. Repeated stripes are locked once.
+     *
+     * @param a first cell
+     * @param b second cell
+     * @param c third cell
+     * @param d fourth cell
+     */
+    void lock(int a, int b, int c, int d) {
+        a &= mask;
+        b &= mask;
+        c &= mask;
+        d &= mask;
+
+        // sorting network for the four stripes
+        int t;
+        if (a > b) { t = a; a = b; b = t; }
+        if (c > d) { t = c; c = d; d = t; }
+        if (a > c) { t = a; a = c; c = t; }
+        if (b > d) { t = b; b = d; d = t; }
+        if (b > c) { t = b; b = c; c = t; }
+
+        stripes[a].lock();
+        if (b != a) stripes[b].lock();
+        if (c != b) stripes[c].lock();
+        if (d != c) stripes[d].lock();
+    }
+
+    /**
+     * Unlocks the cells locked by {@link #lock(int, int, int, int)}
+     *
+     * @param a first cell
+     * @param b second cell
+     * @param c third cell
+     * @param d fourth cell
+     */
+    void unlock(int a, int b, int c, int d) {
+        a &= mask;
+        b &= mask;
+        c &= mask;
+        d &= mask;
+
+        stripes[a].unlock();
+        if (b != a) stripes[b].unlock();
+        if (c != a && c != b) stripes[c].unlock();
+        if (d != a && d != b && d != c) stripes[d].unlock();
+    }
+
+    @Override
+    public <T> T exclusive(int a, int b, int c, int d, Supplier<T> action) {
+        lock(a, b, c, d);
+        try {
+            return action.get();
+        } finally {
+            unlock(a, b, c, d);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        // nothing to release
+    }
+}
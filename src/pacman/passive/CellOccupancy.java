@@ -0,0 +1,161 @@
+package pacman.passive;
+
+import pacman.active.Entity;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Entities occupying each board cell, any number of them per cell.
+ * Every cell has one inline slot, enough for the usual single occupant, and a list of fixed size chunks for crowded
+ * cells. Entities are added and removed with a compare and set on a slot, with no lock, so entities can be placed on
+ * a cell (spawns) while the move protocol guards it. Chunks are linked to a cell the first time it gets crowded and
+ * are reused afterwards, so allocation is bounded by the most crowded each cell ever was.
+ */
+class CellOccupancy {
+
+    private static final int CHUNK_SIZE = 8;
+
+    private final AtomicReferenceArray<Entity> first;
+    private final AtomicReferenceArray<Chunk> overflow;
+
+    /**
+     * Overflow slots of a crowded cell
+     */
+    private static class Chunk {
+        final AtomicReferenceArray<Entity> slots = new AtomicReferenceArray<>(CHUNK_SIZE);
+        final AtomicReference<Chunk> next = new AtomicReference<>();
+
+        /**
+         * Initializes a chunk with its first occupant
+         *
+         * @param entity first occupant
+         */
+        Chunk(Entity entity) {
+            slots.set(0, entity);
+        }
+    }
+
+    /**
+     * Initializes an empty occupancy for a board
+     *
+     * @param numberOfCells of the board
+     */
+    CellOccupancy(int numberOfCells) {
+        assert numberOfCells > 0;
+
+        first = new AtomicReferenceArray<>(numberOfCells);
+        overflow = new AtomicReferenceArray<>(numberOfCells);
+    }
+
+    /**
+     * Adds an entity to a cell. The entity must not be on the cell already.
+     *
+     * @param cell   index of the cell
+     * @param entity to add
+     */
+    void add(int cell, Entity entity) {
+        assert entity != null;
+
+        if (first.compareAndSet(cell, null, entity))
+            return;
+
+        Chunk chunk = overflow.get(cell);
+        if (chunk == null) {
+            Chunk created = new Chunk(entity);
+            if (overflow.compareAndSet(cell, null, created))
+                return;
+            chunk = overflow.get(cell);
+        }
+
+        while (true) {
+            for (int i = 0; i < CHUNK_SIZE; i++)
+                if (chunk.slots.get(i) == null && chunk.slots.compareAndSet(i, null, entity))
+                    return;
+
+            Chunk next = chunk.next.get();
+            if (next == null) {
+                Chunk created = new Chunk(entity);
+                if (chunk.next.compareAndSet(null, created))
+                    return;
+                next = chunk.next.get();
+            }
+            chunk = next;
+        }
+    }
+
+    /**
+     * Removes an entity from a cell
+     *
+     * @param cell   index of the cell
+     * @param entity to remove
+     * @return false if the entity was not on the cell
+     */
+    boolean remove(int cell, Entity entity) {
+        assert entity != null;
+
+        if (first.compareAndSet(cell, entity, null))
+            return true;
+
+        for (Chunk chunk = overflow.get(cell); chunk != null; chunk = chunk.next.get())
+            for (int i = 0; i < CHUNK_SIZE; i++)
+                if (chunk.slots.get(i) == entity && chunk.slots.compareAndSet(i, entity, null))
+                    return true;
+
+        return false;
+    }
+
+    /**
+     * An entity on a cell
+     *
+     * @param cell index of the cell
+     * @return any occupant, null if the cell is empty
+     */
+    Entity any(int cell) {
+        Entity entity = first.get(cell);
+        if (entity != null)
+            return entity;
+
+        for (Chunk chunk = overflow.get(cell); chunk != null; chunk = chunk.next.get())
+            for (int i = 0; i < CHUNK_SIZE; i++)
+                if ((entity = chunk.slots.get(i)) != null)
+                    return entity;
+
+        return null;
+    }
+
+    /**
+     * Number of slots of a cell, the inline slot and the slots of its chunks. Occupants are read in place with
+     * {@link #occupant(int, int)}, so meeting them allocates nothing.
+     *
+     * @param cell index of the cell
+     * @return slots, at least 1
+     */
+    int slots(int cell) {
+        int slots = 1;
+        for (Chunk chunk = overflow.get(cell); chunk != null; chunk = chunk.next.get())
+            slots += CHUNK_SIZE;
+
+        return slots;
+    }
+
+    /**
+     * Entity in a slot of a cell
+     *
+     * @param cell index of the cell
+     * @param slot index of the slot, below {@link #slots(int)}
+     * @return occupant, null if the slot is free
+     */
+    Entity occupant(int cell, int slot) {
+        assert slot >= 0;
+
+        if (slot == 0)
+            return first.get(cell);
+
+        Chunk chunk = overflow.get(cell);
+        for (slot--; slot >= CHUNK_SIZE; slot -= CHUNK_SIZE)
+            chunk = chunk.next.get();
+
+        return chunk.slots.get(slot);
+    }
+}
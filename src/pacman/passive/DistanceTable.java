@@ -0,0 +1,241 @@
+package pacman.passive;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Shortest road distances and first move directions between any two road cells of a board.
+ * Moves follow the game rules: entering a portal ('?') lands on the destination ('!') next to the other portal.
+ * The road never changes once the board is loaded, so the table is immutable and queried in constant time without
+ * locks. Small boards are computed upfront; on boards with more than {@value #EAGER_ROAD_CELLS} road cells each
+ * source row is computed the first time it is queried, and only the rows computed last are kept, within
+ * {@value #LAZY_ROWS_BYTES} bytes. Distances are chars, two bytes per cell pair, on boards with less than 65535 road
+ * cells, and ints above.
+ */
+public class DistanceTable {
+
+    public static final int UNREACHABLE = -1;
+
+    private static final int EAGER_ROAD_CELLS = 1024;
+    private static final int LAZY_ROWS_BYTES = 64 << 20;
+    private static final int MIN_LAZY_ROWS = 4;
+    private static final int NO_DISTANCE = Integer.MAX_VALUE;
+    private static final char NO_NARROW_DISTANCE = Character.MAX_VALUE;
+
+    private final Topology topology;
+    private final int[] roadIndex; // road index of each cell, -1 if not a road
+    private final int[] roadCells; // cell of each road index
+    private final int[] teleports; // destination of each cell when entered, the cell itself if not a portal
+    private final AtomicReferenceArray<Row> rows;
+    // sources of the lazy rows kept, oldest replaced first, -1 if none. Guarded by lazyLock, as is the install of a
+    // lazy row, so every lazy row kept has exactly one slot
+    private final int[] lazySources;
+    private int lazyCursor = 0;
+    private final ReentrantLock lazyLock = new ReentrantLock();
+
+    /**
+     * Distances and directions from one source to every road cell, by road index
+     */
+    private static class Row {
+        final char[] narrow; // distances, on boards with less than NO_NARROW_DISTANCE road cells
+        final int[] wide; // distances, on larger boards
+        final byte[] directions;
+
+        Row(int roadCells) {
+            narrow = roadCells < NO_NARROW_DISTANCE ? new char[roadCells] : null;
+            wide = narrow == null ? new int[roadCells] : null;
+            directions = new byte[roadCells];
+            if (narrow != null)
+                Arrays.fill(narrow, NO_NARROW_DISTANCE);
+            else
+                Arrays.fill(wide, NO_DISTANCE);
+            Arrays.fill(directions, (byte) UNREACHABLE);
+        }
+
+        /**
+         * Distance to a road cell
+         *
+         * @param road index of the target
+         * @return distance, NO_DISTANCE if not reached
+         */
+        int distance(int road) {
+            if (narrow == null)
+                return wide[road];
+
+            char distance = narrow[road];
+            return distance == NO_NARROW_DISTANCE ? NO_DISTANCE : distance;
+        }
+
+        /**
+         * Sets the distance to a road cell
+         *
+         * @param road     index of the target
+         * @param distance to the target
+         */
+        void distance(int road, int distance) {
+            if (narrow == null)
+                wide[road] = distance;
+            else
+                narrow[road] = (char) distance;
+        }
+    }
+
+    /**
+     * Computes the table of a board
+     *
+     * @param topology       of the board to compute
+     * @param portalCells    cells of the two portals
+     * @param portalDstCells cells where an entity entering the other portal lands (portalDstCells[0] for portal 1)
+     */
+    DistanceTable(Topology topology, int[] portalCells, int[] portalDstCells) {
+        assert topology != null;
+        assert portalCells.length == portalDstCells.length;
+
+        this.topology = topology;
+
+        roadIndex = new int[topology.numberOfCells()];
+        int count = 0;
+        for (int cell = 0; cell < roadIndex.length; cell++)
+            roadIndex[cell] = topology.isRoad(cell) ? count++ : -1;
+
+        roadCells = new int[count];
+        teleports = new int[roadIndex.length];
+        for (int cell = 0; cell < roadIndex.length; cell++) {
+            teleports[cell] = cell;
+            if (roadIndex[cell] >= 0)
+                roadCells[roadIndex[cell]] = cell;
+        }
+
+        for (int i = 0; i < portalCells.length; i++)
+            teleports[portalCells[i]] = portalDstCells[portalCells.length - 1 - i];
+
+        rows = new AtomicReferenceArray<>(count);
+        if (count <= EAGER_ROAD_CELLS) {
+            lazySources = null;
+            for (int source = 0; source < count; source++)
+                rows.set(source, compute(source));
+        } else {
+            long rowBytes = (long) count * (count < NO_NARROW_DISTANCE ? Character.BYTES + 1 : Integer.BYTES + 1);
+            int kept = (int) Math.min(count, Math.max(MIN_LAZY_ROWS, LAZY_ROWS_BYTES / rowBytes));
+            lazySources = new int[kept];
+            Arrays.fill(lazySources, -1);
+        }
+    }
+
+    /**
+     * Shortest distance, in moves, between two road cells
+     *
+     * @param from index of the source cell
+     * @param to   index of the target cell
+     * @return number of moves, UNREACHABLE if there is no path
+     */
+    public int distance(int from, int to) {
+        int distance = row(from).distance(road(to));
+        return distance == NO_DISTANCE ? UNREACHABLE : distance;
+    }
+
+    /**
+     * First move of a shortest path between two road cells
+     *
+     * @param from index of the source cell
+     * @param to   index of the target cell
+     * @return direction to move (0: left, 1: down, 2: up, 3: right), UNREACHABLE if there is no path or from is to
+     */
+    public int direction(int from, int to) {
+        return row(from).directions[road(to)];
+    }
+
+    /**
+     * Checks if every row was computed upfront, so no query ever runs a search
+     *
+     * @return true on small boards
+     */
+    public boolean precomputed() {
+        return roadCells.length <= EAGER_ROAD_CELLS;
+    }
+
+    /**
+     * Row of a source cell, computing it if needed. Concurrent first queries may compute the same row twice, only
+     * the first one installed is kept. A computed row takes the place of the oldest lazy row kept, which is dropped
+     * and computed again if queried later. The search runs outside of the lazy lock, only the install takes it.
+     *
+     * @param from index of the source cell
+     * @return row
+     */
+    private Row row(int from) {
+        int source = road(from);
+        Row row = rows.get(source);
+
+        if (row != null)
+            return row;
+
+        row = compute(source);
+
+        lazyLock.lock();
+        try {
+            Row installed = rows.get(source);
+            if (installed != null)
+                return installed; // computed concurrently, already in a slot
+
+            int slot = lazyCursor;
+            lazyCursor = (slot + 1) % lazySources.length;
+            if (lazySources[slot] >= 0)
+                rows.set(lazySources[slot], null);
+            lazySources[slot] = source;
+            rows.set(source, row);
+        } finally {
+            lazyLock.unlock();
+        }
+
+        return row;
+    }
+
+    /**
+     * Road index of a cell
+     *
+     * @param cell index of a road cell
+     * @return road index
+     */
+    private int road(int cell) {
+        assert roadIndex[cell] >= 0 : "not a road cell";
+
+        return roadIndex[cell];
+    }
+
+    /**
+     * Breadth first search from a source
+     *
+     * @param source road index of the source
+     * @return row of the source
+     */
+    private Row compute(int source) {
+        Row row = new Row(roadCells.length);
+        int[] queue = new int[roadCells.length];
+        int head = 0, tail = 0;
+
+        row.distance(source, 0);
+        queue[tail++] = roadCells[source];
+
+        while (head < tail) {
+            int cell = queue[head++];
+            int index = roadIndex[cell];
+
+            for (int direction = 0; direction < 4; direction++) {
+                int neighbour = topology.neighbour(cell, direction);
+                if (neighbour < 0)
+                    continue;
+
+                int next = roadIndex[teleports[neighbour]];
+                if (row.distance(next) != NO_DISTANCE)
+                    continue;
+
+                row.distance(next, row.distance(index) + 1);
+                row.directions[next] = index == source ? (byte) direction : row.directions[index];
+                queue[tail++] = roadCells[next];
+            }
+        }
+
+        return row;
+    }
+}
@@ -0,0 +1,281 @@
+package pacman.passive;
+
+import pt.ua.concurrent.CThread;
+import pt.ua.gboard.*;
+import pt.ua.gboard.games.Labyrinth;
+import pt.ua.gboard.games.LabyrinthGelem;
+
+import java.awt.*;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static java.lang.System.out;
+
+/**
+ * GBoard representation of a board model.
+ * Board changes only mark their cell as dirty, without drawing, so the game is never throttled by the rendering.
+ * A render thread samples the dirty cells at a fixed frame rate and draws each of them once per frame, with its
+ * latest symbol, however many times it changed in between.
+ */
+public class GBoardView implements BoardObserver {
+
+    public static final int DEFAULT_FPS = 30;
+    private static final VarHandle SYMBOL = MethodHandles.arrayElementVarHandle(char[].class);
+    private static final int HUD_COLUMN = 4; // column of the "P:" label, the digits follow it
+    private static final int MIN_HUD_DIGITS = 3;
+
+    private final Labyrinth labyrinth;
+    private final int numberOfColumns;
+    private final char[] symbols; // latest symbol of each cell, only accessed through SYMBOL, as volatile
+    private final AtomicLongArray dirty; // one bit per cell
+    private final Gelem hudLabel = new StringGelem("P:", Color.white);
+    private final Gelem hudBackground = new FilledGelem(Color.blue, 100);
+    private final Gelem[] digits = new Gelem[10];
+    private final int hudDigits; // enough for every point of the board
+    private final Gelem[] shownDigits;
+    private volatile int points = 0;
+    private int shownPoints = 0;
+    private volatile int hudLine;
+    private int shownHudLine = -1;
+    private volatile int frameMillis;
+
+    /**
+     * Initializes a new GBoard window for a board, rendered at the default frame rate
+     *
+     * @param board      to render
+     * @param allSymbols road symbols in the same order as the gelems they are attached to
+     */
+    public GBoardView(Board board, char[] allSymbols) {
+        this(board, allSymbols, DEFAULT_FPS);
+    }
+
+    /**
+     * Initializes a new GBoard window for a board
+     *
+     * @param board      to render
+     * @param allSymbols road symbols in the same order as the gelems they are attached to
+     * @param fps        frames rendered per second
+     */
+    public GBoardView(Board board, char[] allSymbols, int fps) {
+        assert board != null;
+        assert allSymbols != null;
+        assert fps > 0;
+
+        LabyrinthGelem.setShowRoadBoundaries();
+
+        labyrinth = new Labyrinth(board.path(), allSymbols);
+        numberOfColumns = board.numberOfColumns;
+        symbols = new char[board.numberOfCells()];
+        dirty = new AtomicLongArray((board.numberOfCells() + 63) / 64);
+        frameMillis = Math.max(1, 1000 / fps);
+        hudDigits = Math.max(MIN_HUD_DIGITS, String.valueOf(board.topology().positionsOf('.').length).length());
+        shownDigits = new Gelem[hudDigits];
+        hudLine = board.numberOfLines >= 2 && hudFits() ? board.numberOfLines - 2 : -1;
+        if (!hudFits())
+            out.println("Board too narrow to draw " + hudDigits + " digit points, points are not drawn");
+
+        Gelem[] allGelems = {
+                // entities
+                new ImageGelem("./resources/inky.png", labyrinth.board, 100),
+                new ImageGelem("./resources/pinky.png", labyrinth.board, 100),
+                new ImageGelem("./resources/clyde.png", labyrinth.board, 100),
+                new ImageGelem("./resources/blinky.png", labyrinth.board, 100),
+                new ImageGelem("./resources/pacman_r.png", labyrinth.board, 100),
+                new ImageGelem("./resources/attack_w.png", labyrinth.board, 100),
+                new ImageGelem("./resources/attack_b.png", labyrinth.board, 100),
+                new ImageGelem("./resources/generic.png", labyrinth.board, 100),
+                // game elements
+                new StringGelem("" + '.', Color.black),
+                new CircleGelem(Color.blue, 65),
+                // mapPath helpers
+                new CircleGelem(Color.GREEN, 35),
+                new CircleGelem(Color.GREEN, 45),
+                new CircleGelem(Color.BLACK, 35),
+                new CircleGelem(Color.LIGHT_GRAY, 5),
+                new CircleGelem(Color.LIGHT_GRAY, 5),
+                new CircleGelem(Color.ORANGE, 35)};
+
+        // attach all gelems to the map
+        for (int i = 0; i < allSymbols.length; i++) {
+            labyrinth.attachGelemToRoadSymbol(allSymbols[i], allGelems[i]);
+        }
+
+        // HUD gelems are created once and reused by every frame
+        for (int i = 0; i < digits.length; i++)
+            digits[i] = new StringGelem(String.valueOf(i), Color.white);
+
+        CThread renderer = new CThread(this::renderForever, "renderer");
+        renderer.setDaemon(true);
+        renderer.start();
+    }
+
+    /**
+     * Sets the frame rate
+     *
+     * @param fps frames rendered per second
+     */
+    public void setFrameRate(int fps) {
+        assert fps > 0;
+
+        frameMillis = Math.max(1, 1000 / fps);
+    }
+
+    /**
+     * Sets the line where the points are drawn. By default the second to last line of the board. On boards too
+     * narrow for the digits of their points, the points are not drawn.
+     *
+     * @param line of the board, -1 to hide the points
+     */
+    public void setHudLine(int line) {
+        assert line >= -1 && line < labyrinth.numberOfLines;
+
+        hudLine = hudFits() ? line : -1;
+    }
+
+    /**
+     * Checks if the board is wide enough for the "P:" label and the digits of its points
+     *
+     * @return true if the points can be drawn
+     */
+    private boolean hudFits() {
+        return numberOfColumns > HUD_COLUMN + hudDigits;
+    }
+
+    /**
+     * Marks the cell as dirty. Does not block nor draw.
+     */
+    @Override
+    public void cellChanged(int line, int column, char symbol) {
+        int cell = line * numberOfColumns + column;
+        // a volatile store, ordered before the read of the dirty bit: if the bit is still set, the renderer has not
+        // cleared it yet and reads this symbol after clearing it
+        SYMBOL.setVolatile(symbols, cell, symbol);
+
+        int word = cell >>> 6;
+        long bit = 1L << cell;
+        long bits;
+        do {
+            bits = dirty.get(word);
+            if ((bits & bit) != 0)
+                return; // already dirty, the next frame draws the latest symbol
+        } while (!dirty.compareAndSet(word, bits, bits | bit));
+    }
+
+    /**
+     * Points are drawn by the next frame
+     */
+    @Override
+    public void pointsChanged(int points) {
+        assert points >= 0;
+
+        this.points = points;
+    }
+
+    /**
+     * Render thread: draws a frame every frame period, skipping frames instead of catching up when late
+     */
+    private void renderForever() {
+        long next = System.currentTimeMillis();
+
+        //noinspection InfiniteLoopStatement
+        while (true) {
+            renderFrame();
+
+            int period = frameMillis;
+            long now = System.currentTimeMillis();
+            next = now - next > period ? now + period : next + period;
+            if (next > now)
+                CThread.pause((int) (next - now));
+        }
+    }
+
+    /**
+     * Draws the cells that changed since the last frame, and the points
+     */
+    private void renderFrame() {
+        for (int word = 0; word < dirty.length(); word++) {
+            if (dirty.get(word) == 0)
+                continue;
+
+            // clearing the bits first, a change made while drawing marks its cell for the next frame
+            long bits = dirty.getAndSet(word, 0);
+            while (bits != 0) {
+                int cell = (word << 6) + Long.numberOfTrailingZeros(bits);
+                labyrinth.putRoadSymbol(cell / numberOfColumns, cell % numberOfColumns,
+                        (char) SYMBOL.getVolatile(symbols, cell));
+                bits &= bits - 1;
+            }
+        }
+
+        int line = hudLine;
+        if (line != shownHudLine)
+            moveHud(line);
+
+        int p = points;
+        if (p != shownPoints && shownHudLine >= 0)
+            drawPoints(p);
+        shownPoints = p;
+    }
+
+    /**
+     * Moves the points HUD to another line, reusing its gelems
+     *
+     * @param line of the board, -1 to hide the HUD
+     */
+    private void moveHud(int line) {
+        if (shownHudLine >= 0) {
+            labyrinth.board.erase(hudLabel, shownHudLine, HUD_COLUMN, 1);
+            for (int i = 0; i < hudDigits; i++) {
+                if (shownDigits[i] != null)
+                    labyrinth.board.erase(shownDigits[i], shownHudLine, digitColumn(i), 1);
+                labyrinth.board.erase(hudBackground, shownHudLine, digitColumn(i), 1);
+                shownDigits[i] = null;
+            }
+        }
+
+        shownHudLine = line;
+        if (line < 0)
+            return;
+
+        // draw "P" points on the map
+        labyrinth.board.draw(hudLabel, line, HUD_COLUMN, 1);
+        for (int i = 0; i < hudDigits; i++)
+            labyrinth.board.draw(hudBackground, line, digitColumn(i), 1);
+
+        if (shownPoints > 0)
+            drawPoints(shownPoints);
+    }
+
+    /**
+     * Draw points in the GBoard, reusing the HUD gelems. Only the digits that changed are redrawn.
+     *
+     * @param points to draw
+     */
+    private void drawPoints(int points) {
+        String sPoints = new StringBuilder(String.valueOf(points)).reverse().toString();
+
+        // the HUD has room for every digit of the points of the board, after "P:"
+        for (int i = 0; i < hudDigits; i++) {
+            Gelem digit = i < sPoints.length() ? digits[sPoints.charAt(i) - '0'] : null;
+            if (digit == shownDigits[i])
+                continue;
+
+            if (shownDigits[i] != null)
+                labyrinth.board.erase(shownDigits[i], shownHudLine, digitColumn(i), 1);
+            if (digit != null)
+                labyrinth.board.draw(digit, shownHudLine, digitColumn(i), 1);
+            shownDigits[i] = digit;
+        }
+    }
+
+    /**
+     * Column of a digit of the points HUD
+     *
+     * @param i digit, 0 for the units
+     * @return column of the board
+     */
+    private int digitColumn(int i) {
+        return HUD_COLUMN + hudDigits - i;
+    }
+}
@@ -1,19 +1,22 @@
 package pacman.passive;
 
 import pacman.active.Entity;
-import pacman.active.Ghost;
-import pacman.active.Pacman;
-import pacman.other.AttackTimer;
+import pacman.active.ExecutionMode;
+import pacman.active.Workers;
+import pacman.other.EventJournal;
+import pacman.other.EventLog;
+import pacman.other.Metrics;
+import pacman.other.TimerWheel;
 import pt.ua.concurrent.CObject;
-import pt.ua.concurrent.CThread;
-import pt.ua.gboard.*;
-import pt.ua.gboard.games.Labyrinth;
-import pt.ua.gboard.games.LabyrinthGelem;
 
 import java.awt.*;
 import java.io.File;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.ArrayList;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static java.lang.System.out;
 
@@ -23,172 +26,360 @@ import static java.lang.System.out;
  * - Count Pacman points, pacmanLives, etc
  * - Kill and spawn entities
  * - Enable/Disable attack mode
- * - Synchronization of GBoard
+ * - Synchronization of the board model (and of its GBoard view, when not headless)
  */
 public class GameController extends CObject {
 
-    private final Labyrinth labyrinth;
+    public static final String DEFAULT_BOARD = "./resources/board.txt";
+    private static final char NOT_CACHED = '\0';
+    // cached symbols are written with release and read outside of the move protocol with acquire semantics
+    private static final VarHandle CACHED = MethodHandles.arrayElementVarHandle(char[].class);
+    private static final int TIMER_RESOLUTION = 10;
+
+    static final char[] ALL_SYMBOLS = {
+            // main ghosts
+            'C', // inky
+            'P', // pinky
+            'O', // clyde
+            'R', // blinky
+            'X', // pacman
+            // ghosts representations
+            'w', // ghost white
+            'b', // ghost black
+            'G', // generic ghost
+            // game elements
+            '.', // point
+            '$', // bonus
+            // map helpers
+            '%', // ghost cage
+            '+', // markedPositionSymbol
+            'o', // actualPositionSymbol
+            '?', // portal
+            '!' // portal destination
+    };
+
+    private final Board board;
+    private final Topology topology; // static layout of the board, queried without locks
+    private final GBoardView view; // null when headless
+    private MoveProtocol protocol; // set before the entities start
+    private CellLocks locks; // taken directly by the moves, null when regions run them
+    private RegionActors regions; // null with cell locks
     private final Point[] portalPoints, portalDst;
+    private final int[] portalCells, portalDstCells;
+    private final DistanceTable distances;
     //private final CopyOnWriteArrayList<Entity> entities = new CopyOnWriteArrayList<>();
     private final ArrayList<Entity> entities = new ArrayList<>();
-    private final ConcurrentHashMap<Point, Entity> entityTracker = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<Point, Character> mapCache = new ConcurrentHashMap<>();
+    // game-wide state (entities, attack timer, end of game). A lock and not the controller monitor, so virtual
+    // threads do not pin their carrier when they wait for it in the middle of a move
+    private final ReentrantLock gameLock = new ReentrantLock();
+    // dense per cell stores, indexed by y * numberOfColumns + x and guarded by the move protocol (spawns also add
+    // entities to the occupancy, lock-free)
+    private final CellOccupancy occupancy;
+    private final char[] mapCache;
+    // incremented every time a cached symbol changes, read without locks by the entities path memories
+    private final AtomicIntegerArray cellVersions;
+    private final ExecutionMode executionMode;
+    private final AtomicInteger entityIds = new AtomicInteger();
+    private final Metrics metrics = new Metrics();
+    private final AttackPhase attackPhase = new AttackPhase();
+    private final RespawnService respawns = new RespawnService(this);
+    private final Workers workers;
     private final boolean GodMode;
     private final int attackModeDuration;
     private final boolean endless;
+    private final EventLog log = new EventLog(out);
     //private final ReentrantLock lock = new ReentrantLock();
     //private final Condition attackEnded = lock.newCondition();
     //private final Condition hasGameEnded = lock.newCondition();
-    private int totalNumberOfPoints;
-    private AttackTimer timer;
-    private int points = 0;
-    private boolean attackInProgress = false;
-    private int pacmanLives;
-    private boolean gameInProgress = true;
+    private final TimerWheel timers;
+    private TimerWheel.Timer attackTimer;
+    private volatile long clockTime = 0; // tick mode only, game time advanced by the tick engine
+    private EventJournal journal; // set before the entities start, null when not recording
+    private final Scoreboard scoreboard; // points, lives and end of the game, lock-free
+    private final PelletIndex pellets; // points and bonuses left, lock-free
+    private volatile boolean pelletHunting = false;
 
 
     /**
-     * Initializes a new game controller.
+     * Initializes a new game controller rendered in a GBoard window.
      */
     public GameController(int numberPacmanLives,
                           int attackModeDuration,
                           boolean endless) {
+        this(numberPacmanLives, attackModeDuration, endless, false);
+    }
+
+    /**
+     * Initializes a new game controller with entities running on platform threads.
+     *
+     * @param headless if true the game runs only on the in-memory board, without any rendering
+     */
+    public GameController(int numberPacmanLives,
+                          int attackModeDuration,
+                          boolean endless,
+                          boolean headless) {
+        this(numberPacmanLives, attackModeDuration, endless, headless, ExecutionMode.PLATFORM);
+    }
 
-        pacmanLives = numberPacmanLives;
+    /**
+     * Initializes a new game controller on the default board.
+     *
+     * @param headless      if true the game runs only on the in-memory board, without any rendering
+     * @param executionMode threads used by the entities of this game
+     */
+    public GameController(int numberPacmanLives,
+                          int attackModeDuration,
+                          boolean endless,
+                          boolean headless,
+                          ExecutionMode executionMode) {
+        this(numberPacmanLives, attackModeDuration, endless, headless, executionMode, DEFAULT_BOARD);
+    }
+
+    /**
+     * Initializes a new game controller.
+     *
+     * @param headless      if true the game runs only on the in-memory board, without any rendering
+     * @param executionMode threads used by the entities of this game
+     * @param boardPath     board file, with two portals ('?') and their destinations ('!')
+     */
+    public GameController(int numberPacmanLives,
+                          int attackModeDuration,
+                          boolean endless,
+                          boolean headless,
+                          ExecutionMode executionMode,
+                          String boardPath) {
+        this(numberPacmanLives, attackModeDuration, endless, headless, executionMode, boardPath, false);
+    }
+
+    /**
+     * Initializes a new game controller.
+     *
+     * @param headless      if true the game runs only on the in-memory board, without any rendering
+     * @param executionMode threads used by the entities of this game
+     * @param boardPath     board file, with two portals ('?') and their destinations ('!')
+     * @param quiet         if true the game does not log its progress (kills, spawns, points)
+     */
+    public GameController(int numberPacmanLives,
+                          int attackModeDuration,
+                          boolean endless,
+                          boolean headless,
+                          ExecutionMode executionMode,
+                          String boardPath,
+                          boolean quiet) {
+        assert executionMode != null && executionMode.isSupported();
+        assert boardPath != null;
+
+        if (quiet)
+            log.setLevel(EventLog.Level.OFF);
         this.GodMode = numberPacmanLives == -1;
         this.attackModeDuration = attackModeDuration;
         this.endless = endless;
+        this.executionMode = executionMode;
+        this.workers = executionMode == ExecutionMode.TICK ? null : new Workers(executionMode);
+        this.timers = new TimerWheel(this::now, TIMER_RESOLUTION);
+        if (executionMode != ExecutionMode.TICK)
+            timers.startDriver(); // in tick mode timers are advanced by the tick engine
 
-        LabyrinthGelem.setShowRoadBoundaries();
-
-        char[] allSymbols = {
-                // main ghosts
-                'C', // inky
-                'P', // pinky
-                'O', // clyde
-                'R', // blinky
-                'X', // pacman
-                // ghosts representations
-                'w', // ghost white
-                'b', // ghost black
-                'G', // generic ghost
-                // game elements
-                '.', // point
-                '$', // bonus
-                // map helpers
-                '%', // ghost cage
-                '+', // markedPositionSymbol
-                'o', // actualPositionSymbol
-                '?', // portal
-                '!' // portal destination
-        };
-
-        File f = new File("./resources/board.txt");
+        File f = new File(boardPath);
         if (!f.exists()) {
-            out.println("Missing resources folder");
+            out.println(boardPath.equals(DEFAULT_BOARD) ? "Missing resources folder" : "Missing board file");
             out.println("Looking at:" + f.getAbsolutePath());
             System.exit(1);
         }
 
-        labyrinth = new Labyrinth("./resources/board.txt", allSymbols);
-
-        Gelem[] allGelems = {
-                // entities
-                new ImageGelem("./resources/inky.png", labyrinth.board, 100),
-                new ImageGelem("./resources/pinky.png", labyrinth.board, 100),
-                new ImageGelem("./resources/clyde.png", labyrinth.board, 100),
-                new ImageGelem("./resources/blinky.png", labyrinth.board, 100),
-                new ImageGelem("./resources/pacman_r.png", labyrinth.board, 100),
-                new ImageGelem("./resources/attack_w.png", labyrinth.board, 100),
-                new ImageGelem("./resources/attack_b.png", labyrinth.board, 100),
-                new ImageGelem("./resources/generic.png", labyrinth.board, 100),
-                // game elements
-                new StringGelem("" + '.', Color.black),
-                new CircleGelem(Color.blue, 65),
-                // mapPath helpers
-                new CircleGelem(Color.GREEN, 35),
-                new CircleGelem(Color.GREEN, 45),
-                new CircleGelem(Color.BLACK, 35),
-                new CircleGelem(Color.LIGHT_GRAY, 5),
-                new CircleGelem(Color.LIGHT_GRAY, 5),
-                new CircleGelem(Color.ORANGE, 35)};
-
-        // attach all gelems to the map
-        for (int i = 0; i < allSymbols.length; i++) {
-            labyrinth.attachGelemToRoadSymbol(allSymbols[i], allGelems[i]);
-        }
+        board = new Board(boardPath, ALL_SYMBOLS);
+        topology = board.topology();
+        metrics.register();
+
+        view = headless ? null : new GBoardView(board, ALL_SYMBOLS);
+        if (view != null)
+            board.attachObserver(view);
+
+        locks = new CellLocks(board.numberOfCells(), false);
+        protocol = locks;
+        occupancy = new CellOccupancy(board.numberOfCells());
+        mapCache = new char[board.numberOfCells()];
+        cellVersions = new AtomicIntegerArray(board.numberOfCells());
 
         // query the portal destinations and points
-        portalPoints = labyrinth.roadSymbolPositions('?');
-        portalDst = labyrinth.roadSymbolPositions('!');
+        portalPoints = topology.positionsOf('?');
+        portalDst = topology.positionsOf('!');
+        if (portalPoints.length != 2 || portalDst.length != 2)
+            throw new IllegalArgumentException("Board " + boardPath + " must have two portals '?' and two portal destinations '!'");
+        portalCells = new int[]{cellIndex(portalPoints[0]), cellIndex(portalPoints[1])};
+        portalDstCells = new int[]{cellIndex(portalDst[0]), cellIndex(portalDst[1])};
+        distances = new DistanceTable(topology, portalCells, portalDstCells);
 
         // check total number of points for pacman to collect
-        totalNumberOfPoints = getPositions('.').length;
-        out.println("Game maximum number of points: " + totalNumberOfPoints);
-
-        // draw "P" points on the map
-        labyrinth.board.draw(new StringGelem("P:", Color.white), 32, 4, 1);
+        pellets = new PelletIndex(board);
+        int totalNumberOfPoints = pellets.count('.');
+        scoreboard = new Scoreboard(numberPacmanLives, totalNumberOfPoints);
+        log.log(EventLog.Message.MAX_POINTS, totalNumberOfPoints);
     }
 
     /**
      * Receives a report from an entity where it wants to move.
      * This movement triggers collisions with other entities, killing, spawning, points calculation etc
+     * Only the cells involved in the movement are taken (last position and target, plus both portals and the
+     * destination on a portal jump), through the move protocol, so entities that are not close to each other move
+     * in parallel.
      *
      * @param pos to move the entity to
      * @return new position, if teleported by the portal
      */
-    public synchronized Point reportPosition(Point pos) {
+    public Point reportPosition(Point pos) {
+        return reportPosition(Entity.current(), pos);
+    }
+
+    /**
+     * Reports the move of an entity on its behalf (see {@link #reportPosition(Point)}).
+     *
+     * @param entity that moves
+     * @param pos    to move the entity to
+     * @return new position, if teleported by the portal
+     */
+    Point reportPosition(Entity entity, Point pos) {
         assert pos != null;
         assert isRoad(pos);
+        assert entity != null && entity.isAlive();
+
+        // lastPos is only written by the moves of the entity itself, no need to lock to read it
+        Point from = entity.lastPos;
+        int generation = entity.generation();
+        int fromCell = cellIndex(from);
+        int cell = cellIndex(pos);
+        int farPortalCell = cell;
+        int dstCell = cell;
+
+        if (cell == portalCells[0] || cell == portalCells[1]) {
+            farPortalCell = (cell == portalCells[1]) ? portalCells[0] : portalCells[1];
+            dstCell = (cell == portalCells[1]) ? portalDstCells[0] : portalDstCells[1];
+        }
+
+        long waitStart = System.nanoTime();
+        if (locks != null) {
+            locks.lock(fromCell, cell, farPortalCell, dstCell);
+            try {
+                return commit(entity, pos, from, generation, cell, waitStart);
+            } finally {
+                locks.unlock(fromCell, cell, farPortalCell, dstCell);
+            }
+        }
+
+        // the regions run the move on the command of the entity, reused by all its moves
+        MoveCommand command = entity.moveCommand();
+        command.pos = pos;
+        command.from = from;
+        command.generation = generation;
+        command.cell = cell;
+        command.waitStart = waitStart;
+        command.cells(fromCell, cell, farPortalCell, dstCell);
+        return (Point) regions.move(command);
+    }
+
+    /**
+     * Commits a move posted to the region actors, once they gave it exclusive access to its cells
+     *
+     * @param command move of an entity
+     * @return new position, or the last position if the entity was killed meanwhile
+     */
+    private Point commit(MoveCommand command) {
+        return commit(command.entity, command.pos, command.from, command.generation, command.cell, command.waitStart);
+    }
+
+    /**
+     * Commits a move, with exclusive access to its cells, unless the entity was killed while waiting for them
+     *
+     * @param entity     that moves
+     * @param pos        to move the entity to
+     * @param from       last position of the entity when it reported the move
+     * @param generation of the entity when it reported the move
+     * @param cell       index of pos
+     * @param waitStart  time the move started waiting for its cells, in ns
+     * @return new position, or from if the entity was killed meanwhile
+     */
+    private Point commit(Entity entity, Point pos, Point from, int generation, int cell, long waitStart) {
+        long waited = System.nanoTime() - waitStart;
 
-        Entity entity = (Entity) CThread.currentThread();
-        assert entity.isAlive();
+        // killed, or even respawned, while waiting for the cells
+        if (entity.isInterrupted() || entity.generation() != generation) return from;
+
+        Point moved = move(entity, pos, cell);
+        metrics.moved(entity.isGhost(), waited);
+        entity.moveStats().committed(now(), waited);
+        return moved;
+    }
+
+    /**
+     * Moves an entity. Caller must have exclusive access to the entity last position, to the target position and, if
+     * the target is a portal, to both portals and to the portal destination.
+     *
+     * @param entity to move
+     * @param pos    to move the entity to
+     * @param cell   index of pos
+     * @return new position, if teleported by the portal
+     */
+    private Point move(Entity entity, Point pos, int cell) {
 
         // portal
-        if (pos.equals(portalPoints[0]) || pos.equals(portalPoints[1])) {
+        if (cell == portalCells[0] || cell == portalCells[1]) {
 
             // remove presence from structures
-            entityTracker.remove(entity.lastPos);
-            labyrinth.putRoadSymbol(entity.lastPos.y, entity.lastPos.x, ' ');
+            int last = cellIndex(entity.lastPos);
+            occupancy.remove(last, entity);
+            paint(entity, last, vacated(last, ' '));
 
-            pos = (pos.equals(portalPoints[1])) ? portalDst[0] : portalDst[1]; // transport entity to portal destination
+            // transport entity to portal destination
+            boolean fromRight = cell == portalCells[1];
+            pos = fromRight ? portalDst[0] : portalDst[1];
+            cell = fromRight ? portalDstCells[0] : portalDstCells[1];
 
-            entityTracker.put(pos, entity); // re-add presence
-            entity.lastPos = (pos.equals(portalDst[1])) ? portalPoints[1] : portalPoints[0]; // update last position to portal
+            entity.lastPos = fromRight ? portalPoints[0] : portalPoints[1]; // update last position to portal
         }
 
-        char mapSymbol = RealRoadSymbol(pos);
+        int last = cellIndex(entity.lastPos);
+        char mapSymbol = board.roadSymbol(cell);
+
+        // clean up our presence on map. check if cell is occupied by other entities
+        occupancy.remove(last, entity);
+        int slots = occupancy.slots(cell);
+
+        // every occupant is met, in place. did pacman and a ghost crossed each other?
+        for (int slot = 0; slot < slots; slot++) {
+            Entity entity1 = occupancy.occupant(cell, slot);
+            if (entity1 == null || entity1 == entity || !entity1.isAlive() || entity1.isInterrupted())
+                continue; // not started yet, killed by a previous occupant, or the game ended
 
-        // clean up our presence on map. check if cell is occupied from some entity
-        Entity entity1 = entityTracker.get(pos);
-        entityTracker.remove(pos);
-        entityTracker.remove(entity.lastPos);
+            metrics.collision();
+            record(EventJournal.Event.COLLISION, entity, entity1.id, -1, cell, '\0', 0);
 
-        // cell is occupied. did pacman and a ghost crossed each other?
-        if (entity1 != null) {
             if (entity.isGhost() && !entity1.isGhost()
                     || !entity.isGhost() && entity1.isGhost()) {
-                out.println("I am:" + entity.getName() + " killing " + entity1.getName() + " " + pos + " on cache:" + entity1.getName());
+                log.log(EventLog.Message.KILLING, entity.getName(), entity1.getName(), pos, 0);
 
                 if (!entity.isGhost()) {
                     if (entity1.underAttack() || GodMode) {
-                        spawnNewEntity(entity1); // kill entity
+                        occupancy.remove(cell, entity1);
+                        spawnNewEntity(entity1, entity); // kill entity
                     } else {
-                        labyrinth.putRoadSymbol(entity.lastPos.y, entity.lastPos.x, ' ');
-                        spawnNewEntity(entity); // pacman dies
+                        paint(entity, last, vacated(last, ' '));
+                        spawnNewEntity(entity, entity1); // pacman dies
                     }
 
                 } else {
                     if (entity.underAttack() || GodMode) {
-                        spawnNewEntity(entity); // we, ghost, die
+                        spawnNewEntity(entity, entity1); // we, ghost, die
                     } else {
-                        labyrinth.putRoadSymbol(entity1.lastPos.y, entity1.lastPos.x, ' ');
-                        spawnNewEntity(entity1); // we kill pacman
+                        occupancy.remove(cell, entity1);
+                        paint(entity, cellIndex(entity1.lastPos), ' ');
+                        spawnNewEntity(entity1, entity); // we kill pacman
                     }
                 }
 
-                //labyrinth.putRoadSymbol(pos.y, pos.x, mapCache.computeIfAbsent(pos, t -> ' '));
-                labyrinth.putRoadSymbol(pos.y, pos.x, mapCache.computeIfAbsent(pos, t -> symbolIsEntity(mapSymbol) ? mapSymbol : ' ')); // After killing, restore map
+                // After killing, restore map
+                if (mapCache[cell] == NOT_CACHED)
+                    fill(cell, symbolIsEntity(mapSymbol) ? mapSymbol : ' ');
+                paint(entity, cell, vacated(cell, mapCache[cell]));
 
                 if (entity.isInterrupted()) return pos;
 
@@ -197,97 +388,265 @@ public class GameController extends CObject {
 
         // pacman login
         if (!entity.isGhost()) {
-            if (RealRoadSymbol(pos) == '.') { // point counting logic
-                points++;
-
-                if ((points % 30) == 0) out.println("Points " + points + "/" + totalNumberOfPoints);
-
-                drawPoints();
-
-                if (points == totalNumberOfPoints && !endless)
-                    endGame();
-
-            } else if (RealRoadSymbol(pos) == '$') { // bonus logic
-                attackInProgress = true;
-                entities.stream().filter(Entity::isGhost).forEach(Entity::attackMode);
-                startAttackTimer();
+            char realSymbol = board.roadSymbol(cell);
+            if (realSymbol == '.') { // point counting logic
+                pointCollected(entity, cell);
+            } else if (realSymbol == '$') { // bonus logic
+                bonusCollected(entity, cell);
             }
 
-            mapCache.put(pos, ' '); // collectible was collected. mapCache is just road now
-        } else {
+            cache(cell, ' '); // collectible was collected. mapCache is just road now
+        } else if (mapCache[cell] == NOT_CACHED) {
             // cache the current bonus/point under target position
-            mapCache.computeIfAbsent(pos, t -> symbolIsEntity(mapSymbol) ? ' ' : mapSymbol);
+            fill(cell, symbolIsEntity(mapSymbol) ? ' ' : mapSymbol);
         }
 
-        paintPosition(pos); // representation on map
-        entityTracker.put(pos, entity);
+        paintPosition(entity, pos, cell); // representation on map
+        occupancy.add(cell, entity);
 
         return pos;
     }
 
     /**
-     * Draw points in the GBoard
+     * Counts a point collected by pacman and checks if the game was won. Lock-free, only the last point ends the
+     * game. Caller must have exclusive access to the cell.
+     *
+     * @param entity that collected the point
+     * @param cell   of the point
      */
-    private synchronized void drawPoints() {
-        assert points <= totalNumberOfPoints;
-        assert points >= 0;
-        assert labyrinth.numberOfLines >= 32; // TODO remove hardcoded point positions
+    private void pointCollected(Entity entity, int cell) {
+        pellets.consume(cell, '.');
+        int points = scoreboard.pointCollected(entity.id);
+        record(EventJournal.Event.POINT, entity, -1, -1, cell, '\0', points);
+
+        if ((points % 30) == 0)
+            log.log(EventLog.Message.POINTS, (long) points << 32 | scoreboard.totalPoints());
 
-        String sPoints = new StringBuilder(String.valueOf(points)).reverse().toString();
-        labyrinth.board.draw(new FilledGelem(Color.blue, 100), 32, 5, 1);
-        labyrinth.board.draw(new FilledGelem(Color.blue, 100), 32, 6, 1);
-        labyrinth.board.draw(new FilledGelem(Color.blue, 100), 32, 7, 1);
+        drawPoints();
+
+        if (points == scoreboard.totalPoints() && !endless && scoreboard.claimEnd())
+            endGame();
+    }
 
-        for (int i = 0; i < sPoints.length(); i++) {
-            labyrinth.board.draw(new StringGelem(String.valueOf(sPoints.charAt(i)), Color.white), 32, 7 - i, 1);
+    /**
+     * Puts all ghosts in attack mode
+     *
+     * @param entity that collected the bonus
+     * @param cell   of the bonus
+     */
+    private void bonusCollected(Entity entity, int cell) {
+        gameLock.lock();
+        try {
+            pellets.consume(cell, '$');
+            attackPhase.bonus(now());
+            record(EventJournal.Event.BONUS, entity, -1, -1, cell, '\0', (int) attackPhase.bonuses());
+            metrics.attackActivated();
+            startAttackTimer();
+        } finally {
+            gameLock.unlock();
         }
+    }
 
+    /**
+     * Publishes the points to the board observers, that draw them asynchronously. Concurrent publishers may publish
+     * out of order, so the points are published again until the last published value is the current one.
+     */
+    private void drawPoints() {
+        int shown;
+        do {
+            shown = scoreboard.points();
+            assert shown >= 0 && shown <= scoreboard.totalPoints();
+
+            board.pointsChanged(shown);
+        } while (shown != scoreboard.points());
     }
 
     /**
-     * Spawns a new cloned entity
+     * Kills an entity and queues its respawn. The respawn itself is done later, outside of this critical section
+     * and of the cell locks, see {@link RespawnService}.
      *
-     * @param entity to clone
+     * @param entity to kill
+     * @param killer entity that killed it, entity itself when it moved into its killer
      */
-    private synchronized void spawnNewEntity(Entity entity) {
-        assert entity != null;
-        assert entity.isAlive();
-        assert !entity.isInterrupted();
-        assert entities.contains(entity);
+    private void spawnNewEntity(Entity entity, Entity killer) {
+        gameLock.lock();
+        try {
+            assert entity != null;
+
+            if (scoreboard.ended())
+                return; // the game ended during the move, every entity was already interrupted
+
+            assert entity.isAlive();
+            assert !entity.isInterrupted();
+            assert entities.contains(entity);
+
+            metrics.killed(entity.isGhost());
+            scoreboard.killed(entity.id, entity.isGhost(), killer.id);
 
-        entities.remove(entity);
-        entity.interrupt();
+            entities.remove(entity);
+            entity.interrupt();
 
-        if (entity.isGhost()) {
-            out.println("Spawning new " + entity.getName());
-            Ghost ghost = (Ghost) entity;
-            ghost = new Ghost(entity.getName(), this, entity.initialSymbol, entity.initPos, entity.initialSpeed, ghost.attackModeSlowdownFactor, ghost.blinkSpeed);
+            int pacmanLives = !entity.isGhost() && !endless ? scoreboard.lifeLost() : scoreboard.pacmanLives();
+            record(EventJournal.Event.KILL, entity, -1, -1, cellIndex(entity.lastPos), '\0', pacmanLives);
 
-            entities.add(ghost);
-            ghost.start();
-            out.println(entity.getName() + " spawned at " + entity.initPos);
-        } else {
-            if(!endless) pacmanLives--;
-            if (pacmanLives > 0) {
-                out.println("Pacman has " + pacmanLives + " pacmanLives left.");
-                Pacman pm = new Pacman(entity.getName(), this, entity.initialSymbol, entity.initPos, entity.getInitialSpeed());
-                entities.add(pm);
-                pm.start();
+            if (entity.isGhost()) {
+                log.log(EventLog.Message.SPAWNING, entity.getName());
+                respawns.request(entity);
             } else {
-                endGame();
+                if (pacmanLives > 0) {
+                    log.log(EventLog.Message.LIVES_LEFT, pacmanLives);
+                    respawns.request(entity);
+                } else if (scoreboard.claimEnd()) {
+                    endGame();
+                }
             }
+        } finally {
+            gameLock.unlock();
         }
     }
 
     /**
-     * End the game, interrupts all entities and signals who's waiting for the end of the game.
+     * Adds back a respawned entity and starts it, unless the game already ended
+     *
+     * @param entity recycled or new, not started
+     * @return true if started
+     */
+    boolean respawned(Entity entity) {
+        gameLock.lock();
+        try {
+            if (scoreboard.ended())
+                return false;
+
+            entities.add(entity);
+            occupancy.add(cellIndex(entity.initPos), entity);
+            entity.start();
+            record(EventJournal.Event.SPAWN, entity, -1, -1, cellIndex(entity.initPos), entity.symbol(),
+                    entity.isGhost() ? 1 : 0);
+
+            if (entity.isGhost())
+                log.log(EventLog.Message.SPAWNED, entity.getName(), entity.initPos, null, 0);
+
+            return true;
+        } finally {
+            gameLock.unlock();
+        }
+    }
+
+    /**
+     * Sets the time between the kill of an entity and its respawn
+     *
+     * @param millis delay, 0 to respawn as soon as possible
+     */
+    public void setRespawnDelay(int millis) {
+        assert millis >= 0;
+
+        respawns.setDelay(millis);
+    }
+
+    /**
+     * Sets the frame rate of the GBoard view, if not headless
+     *
+     * @param fps frames rendered per second
+     */
+    public void setFrameRate(int fps) {
+        assert fps > 0;
+
+        if (view != null)
+            view.setFrameRate(fps);
+    }
+
+    /**
+     * Makes the pacmans hunt the closest pellet instead of walking randomly, on boards small enough for their
+     * distance table to be computed upfront. Must be called before the entities start.
+     *
+     * @param hunting true to hunt pellets
+     */
+    public void setPelletHunting(boolean hunting) {
+        pelletHunting = hunting;
+    }
+
+    /**
+     * Checks if the pacmans hunt pellets
+     *
+     * @return true if hunting, see {@link #setPelletHunting(boolean)}
      */
-    private synchronized void endGame() {
-        assert gameInProgress;
+    public boolean huntsPellets() {
+        return pelletHunting && distances.precomputed();
+    }
+
+    /**
+     * Admits the moves to their cells in arrival order, with fair cell locks, so the moves of an entity are not
+     * overtaken indefinitely by the moves of crowds around it and the tail of the move wait stays bounded. Region
+     * actors already run the moves in mailbox order. Must be called before the entities are attached.
+     */
+    public void useFairAdmission() {
+        assert entities.isEmpty();
+        assert locks != null : "regions already admit moves in order";
+
+        locks = new CellLocks(board.numberOfCells(), true);
+        protocol = locks;
+    }
+
+    /**
+     * Splits the board in regions owned by actors, that run the moves of their cells, instead of locking the cells
+     * in the moving threads. Must be called before the entities are attached.
+     *
+     * @param regions number of regions, bands of board lines
+     */
+    public void useRegions(int regions) {
+        assert regions > 0;
+        assert entities.isEmpty();
+
+        locks = null;
+        this.regions = new RegionActors(board, regions, this::commit);
+        protocol = this.regions;
+        log.log(EventLog.Message.REGIONS, this.regions.numberOfRegions());
+    }
+
+    /**
+     * Sets the line where the GBoard view draws the points, if not headless
+     *
+     * @param line of the board, -1 to hide the points
+     */
+    public void setHudLine(int line) {
+        if (view != null)
+            view.setHudLine(line);
+    }
+
+    /**
+     * Stops a game that did not end yet, as lost, for games played for a limited time
+     *
+     * @return false if the game already ended
+     */
+    public boolean stopGame() {
+        if (!scoreboard.claimEnd())
+            return false;
 
-        entities.forEach(Thread::interrupt);
-        gameInProgress = false;
-        broadcast();
+        endGame();
+        return true;
+    }
+
+    /**
+     * End the game, interrupts all entities and signals who's waiting for the end of the game.
+     * Caller must have claimed the end of the game on the scoreboard, so the game is ended once.
+     */
+    private void endGame() {
+        gameLock.lock();
+        try {
+            assert scoreboard.ended();
+
+            metrics.gameEnded();
+            record(EventJournal.Event.GAME_END, null, -1, -1, -1, '\0', scoreboard.points());
+            timers.stop();
+            respawns.stop();
+            entities.forEach(Entity::interrupt);
+            protocol.shutdown(); // once the entities are interrupted, so they stop on their interrupt
+            if (workers != null)
+                workers.shutdown();
+            scoreboard.signalEnd();
+        } finally {
+            gameLock.unlock();
+        }
     }
 
     /**
@@ -295,126 +654,315 @@ public class GameController extends CObject {
      *
      * @return true if pacman won, false otherwise
      */
-    public synchronized boolean waitingForGameToEnd() {
-        assert gameInProgress;
-
-        while (gameInProgress)
-            await();
+    public boolean waitingForGameToEnd() {
+        scoreboard.awaitEnd();
 
-        out.println("Final points:" + points);
-        return points == totalNumberOfPoints;
+        log.log(EventLog.Message.FINAL_POINTS, scoreboard.points());
+        log.flush();
+        return scoreboard.points() == scoreboard.totalPoints();
     }
 
     /**
-     * Paints an entity in the map
+     * Paints an entity in the map. Caller must have exclusive access to the entity last position and to pos.
      *
-     * @param pos to paint
+     * @param entity to paint
+     * @param pos    to paint
+     * @param cell   index of pos
      */
-    private synchronized void paintPosition(Point pos) {
+    private void paintPosition(Entity entity, Point pos, int cell) {
         assert pos != null;
         assert isRoad(pos);
 
-        Entity entity = (Entity) CThread.currentThread();
+        int last = cellIndex(entity.lastPos);
+        char symbol = entity.symbol();
 
-        labyrinth.putRoadSymbol(entity.lastPos.y, entity.lastPos.x, mapCache.computeIfAbsent(entity.lastPos, t -> RealRoadSymbol(pos)));
-        mapCache.computeIfAbsent(pos, t -> RealRoadSymbol(pos));
-        labyrinth.putRoadSymbol(pos.y, pos.x, entity.symbol);
+        if (mapCache[last] == NOT_CACHED)
+            fill(last, board.roadSymbol(cell));
+        char restored = vacated(last, mapCache[last]);
+        board.putRoadSymbol(last, restored);
 
-        if (!entity.lastPos.equals(pos))
+        if (mapCache[cell] == NOT_CACHED)
+            fill(cell, board.roadSymbol(cell));
+        board.putRoadSymbol(cell, symbol);
+        record(EventJournal.Event.MOVE, entity, -1, last, cell, symbol, restored);
+
+        if (last != cell)
             entity.lastPos = pos;
     }
 
 
+    /**
+     * Symbol to paint on a cell an entity left: the symbol of an entity still on the cell, if any.
+     * Caller must have exclusive access to the cell.
+     *
+     * @param cell   index of the cell
+     * @param symbol to paint if no entity is left on the cell
+     * @return symbol to paint
+     */
+    private char vacated(int cell, char symbol) {
+        Entity left = occupancy.any(cell);
+        return left == null ? symbol : left.symbol();
+    }
+
     /**
      * Starts a timer counting the duration of an attack.
      * An attack is when pacman eats a bonus and ghosts can be killed by pacman.
      */
-    private synchronized void startAttackTimer() {
-        assert attackInProgress;
+    private void startAttackTimer() {
+        gameLock.lock();
+        try {
+            assert attackPhase.active();
+
+            // a bonus eaten during an attack extends it
+            if (attackTimer == null || !attackTimer.extend(attackModeDuration))
+                attackTimer = timers.schedule(attackModeDuration, this::attackTimerExpired);
+        } finally {
+            gameLock.unlock();
+        }
+    }
 
-        if (timer == null || !timer.isAlive()) {
-            timer = new AttackTimer(this, attackModeDuration);
-            timer.start();
-        } else {
-            timer.addMore(attackModeDuration);
+    /**
+     * Ends the attack mode when its timer expires. A timer that expired while a bonus already started a new one
+     * is ignored.
+     */
+    private void attackTimerExpired() {
+        gameLock.lock();
+        try {
+            if (attackTimer != null && attackTimer.expired()) {
+                attackTimer = null;
+                disableAttackMode();
+            }
+        } finally {
+            gameLock.unlock();
         }
     }
 
     /**
-     * Synchronized GBoard's roadSymbol() method
+     * Road symbol without entities, as cached by the controller
      *
      * @param pos to get the road symbol
      * @return char road symbol
      */
-    private synchronized char RealRoadSymbol(Point pos) {
+    public char CachedRoadSymbol(Point pos) {
         assert pos != null;
         assert isRoad(pos);
 
-        return labyrinth.roadSymbol(pos.y, pos.x);
+        return CachedRoadSymbol(cellIndex(pos));
     }
 
-    public synchronized char CachedRoadSymbol(Point pos) {
-        assert pos != null;
-        assert isRoad(pos);
+    /**
+     * Road symbol without entities, as cached by the controller.
+     * Not synchronized once the cell is cached, like {@link #cellVersion(int)}: the symbol is read with acquire
+     * semantics, and only the first read of a cell takes it through the move protocol to fill the cache.
+     *
+     * @param cell index of a road cell
+     * @return char road symbol
+     */
+    public char CachedRoadSymbol(int cell) {
+        char symbol = (char) CACHED.getAcquire(mapCache, cell);
+        if (symbol != NOT_CACHED)
+            return symbol;
 
-        return mapCache.computeIfAbsent(pos, t -> RealRoadSymbol(pos));
+        return protocol.exclusive(cell, () -> {
+            if (mapCache[cell] == NOT_CACHED)
+                fill(cell, board.roadSymbol(cell));
+
+            return mapCache[cell];
+        });
     }
 
     /**
-     * Synchronized GBoard's isRoad() method
+     * Version of the cached symbol of a cell. Changes every time the cached symbol changes.
+     * Not synchronized, entities use it to detect stale symbols in their path memory.
+     *
+     * @param cell index of the cell
+     * @return version of the cell
+     */
+    public int cellVersion(int cell) {
+        return cellVersions.get(cell);
+    }
+
+    /**
+     * Changes the cached symbol of a cell. Caller must have exclusive access to the cell.
+     *
+     * @param cell   index of the cell
+     * @param symbol to cache
+     */
+    private void cache(int cell, char symbol) {
+        if (mapCache[cell] != symbol) {
+            CACHED.setRelease(mapCache, cell, symbol);
+            cellVersions.incrementAndGet(cell);
+        }
+    }
+
+    /**
+     * Caches the first symbol of a cell. Caller must have exclusive access to the cell.
+     *
+     * @param cell   index of the cell
+     * @param symbol to cache
+     */
+    private void fill(int cell, char symbol) {
+        CACHED.setRelease(mapCache, cell, symbol);
+    }
+
+    /**
+     * Board's isRoad() method, answered by the immutable topology without locks
      *
      * @param pos to check if is road
      * @return true if it is a road position, otherwise it returns false
      */
-    public synchronized boolean isRoad(Point pos) {
+    public boolean isRoad(Point pos) {
         assert pos != null;
 
-        return labyrinth.isRoad(pos.y, pos.x);
+        return topology.isRoad(pos.y, pos.x);
     }
 
     /**
-     * Synchronized GBoard's validPosition() method
+     * Board's validPosition() method, answered by the immutable topology without locks
      *
      * @param pos to check if valid
      * @return true if position is valid, otherwise it returns false
      */
-    public synchronized boolean validPosition(Point pos) {
+    public boolean validPosition(Point pos) {
         assert pos != null;
 
-        return labyrinth.validPosition(pos.y, pos.x);
+        return topology.validPosition(pos.y, pos.x);
     }
 
     /**
-     * Synchronized GBoard roadSymbolPositions() method
+     * Positions of a symbol on the board, line by line, without locks. Points and bonuses are the ones left, read
+     * from the pellet index, including the ones under a ghost. Other symbols, such as the entity starts, are where
+     * the board file put them.
      *
      * @param symbol to road
      * @return array of positions
      */
-    public synchronized Point[] getPositions(char symbol) {
+    public Point[] getPositions(char symbol) {
+        if (symbol == '.' || symbol == '$')
+            return pellets.positions(symbol);
 
-        return labyrinth.roadSymbolPositions(symbol);
+        return topology.positionsOf(symbol);
     }
 
     /**
-     * Disables attack mode and broadcasts signal to everyone waiting for its end
+     * Tick mode: advances the game clock and runs the timers that expired
+     *
+     * @param time new game time in milliseconds
      */
-    public synchronized void disableAttackMode() {
-        assert attackInProgress;
+    void advanceClock(long time) {
+        assert executionMode == ExecutionMode.TICK;
+        assert time >= clockTime;
 
-        attackInProgress = false;
-        broadcast();
+        clockTime = time;
+        timers.advance(time);
+    }
 
+    /**
+     * Tick mode: runs the timers that expired, without advancing the game clock
+     */
+    void runTimers() {
+        timers.advance(clockTime);
     }
 
     /**
-     * Waiting point for the end of an attack
+     * Timers of this game: attack mode expiry and respawn delays
+     *
+     * @return timer wheel
      */
-    public synchronized void hasAttackModeEnded() {
-        assert attackInProgress;
+    public TimerWheel timers() {
+        return timers;
+    }
 
-        while (attackInProgress)
-            await();
+    /**
+     * Current game time. In tick mode it is advanced by the tick engine, otherwise it is the wall clock.
+     *
+     * @return time in milliseconds
+     */
+    public long now() {
+        return executionMode == ExecutionMode.TICK ? clockTime : System.currentTimeMillis();
+    }
 
+    /**
+     * Entities currently in the game, in the order they were added
+     *
+     * @return copy of the entities
+     */
+    Entity[] entitiesSnapshot() {
+        gameLock.lock();
+        try {
+            return entities.toArray(new Entity[0]);
+        } finally {
+            gameLock.unlock();
+        }
+    }
+
+    /**
+     * Checks if the game is still running
+     *
+     * @return true if the game did not end
+     */
+    public boolean gameInProgress() {
+        return !scoreboard.ended();
+    }
+
+    /**
+     * Points collected by pacman so far
+     *
+     * @return points
+     */
+    public int points() {
+        return scoreboard.points();
+    }
+
+    /**
+     * Points pacman has to collect to win
+     *
+     * @return total number of points
+     */
+    public int totalNumberOfPoints() {
+        return scoreboard.totalPoints();
+    }
+
+    /**
+     * Points, lives and kills of the game, for the whole game and for each entity
+     *
+     * @return scoreboard
+     */
+    public Scoreboard scoreboard() {
+        return scoreboard;
+    }
+
+    /**
+     * Event log of the game, printing its progress to the console in the background
+     *
+     * @return log
+     */
+    public EventLog log() {
+        return log;
+    }
+
+    /**
+     * Disables attack mode
+     */
+    public void disableAttackMode() {
+        gameLock.lock();
+        try {
+            assert attackPhase.active();
+
+            attackPhase.end();
+            record(EventJournal.Event.ATTACK_END, null, -1, -1, -1, '\0', 0);
+        } finally {
+            gameLock.unlock();
+        }
+    }
+
+    /**
+     * Attack mode shared by the ghosts. Read without locks.
+     *
+     * @return attack phase
+     */
+    public AttackPhase attackPhase() {
+        return attackPhase;
     }
 
     /**
@@ -422,13 +970,175 @@ public class GameController extends CObject {
      *
      * @param entity to attach
      */
-    public synchronized void attachExtraEntity(Entity entity) {
+    public void attachExtraEntity(Entity entity) {
+
+        int cell = cellIndex(entity.initPos);
+        boolean coveredPoint = protocol.exclusive(cell, () -> {
+            boolean point = board.roadSymbol(cell) == '.';
+            paint(entity, cell, entity.symbol());
+            cache(cell, ' ');
+            pellets.consume(cell, '.');
+            pellets.consume(cell, '$');
+            return point;
+        });
+
+        registerEntity(entity, coveredPoint);
+    }
+
+    /**
+     * Adds an entity to the game and updates the points that are left after its placement
+     *
+     * @param entity       to add
+     * @param coveredPoint if the entity was placed over a point
+     */
+    private void registerEntity(Entity entity, boolean coveredPoint) {
+        gameLock.lock();
+        try {
+            entities.add(entity);
+            occupancy.add(cellIndex(entity.initPos), entity);
+            record(EventJournal.Event.SPAWN, entity, -1, -1, cellIndex(entity.initPos), entity.symbol(),
+                    entity.isGhost() ? 1 : 0);
+            int totalNumberOfPoints = coveredPoint ? scoreboard.pointCovered() : scoreboard.totalPoints();
+            log.log(EventLog.Message.UPDATED_MAX_POINTS, totalNumberOfPoints);
+        } finally {
+            gameLock.unlock();
+        }
+    }
+
+    /**
+     * Starts recording the game events to a journal. Must be called before the entities are attached.
+     *
+     * @param path of the journal file
+     * @return the journal, to be closed once the game ends
+     */
+    public EventJournal startJournal(String path) {
+        assert journal == null;
+        assert entities.isEmpty();
+
+        journal = new EventJournal(path, board.numberOfColumns, board.numberOfLines, now());
+        return journal;
+    }
+
+    /**
+     * Paints a road cell outside of a move, and records it. Caller must have exclusive access to the cell.
+     *
+     * @param cause  entity that caused the change
+     * @param cell   index of the cell
+     * @param symbol to paint
+     */
+    private void paint(Entity cause, int cell, char symbol) {
+        board.putRoadSymbol(cell, symbol);
+        record(EventJournal.Event.PAINT, cause, -1, -1, cell, symbol, 0);
+    }
+
+    /**
+     * Records an event in the journal, if recording
+     *
+     * @param event  to record
+     * @param entity of the event, null if none
+     * @param other  id of another entity, -1 if none
+     * @param from   cell index, -1 if none
+     * @param to     cell index, -1 if none
+     * @param symbol road symbol, '\0' if none
+     * @param value  event specific, see {@link EventJournal.Event}
+     */
+    private void record(EventJournal.Event event, Entity entity, int other, int from, int to, char symbol, int value) {
+        if (journal != null)
+            journal.record(event, now(), entity == null ? -1 : entity.id, other, from, to, symbol, value);
+    }
+
+    /**
+     * Runtime metrics of this game
+     *
+     * @return metrics
+     */
+    public Metrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Workers running the entities of this game
+     *
+     * @return workers, null in tick mode
+     */
+    public Workers workers() {
+        return workers;
+    }
+
+    /**
+     * Threads used by the entities of this game
+     *
+     * @return execution mode
+     */
+    public ExecutionMode executionMode() {
+        return executionMode;
+    }
+
+    /**
+     * Index of a position in the board cells
+     *
+     * @param pos position
+     * @return cell index
+     */
+    public int cellIndex(Point pos) {
+        return topology.cellIndex(pos.y, pos.x);
+    }
+
+    /**
+     * Number of cells of the board
+     *
+     * @return number of cells
+     */
+    public int numberOfCells() {
+        return board.numberOfCells();
+    }
+
+    /**
+     * Position of a road cell. Positions are shared and must not be modified.
+     *
+     * @param cell index of the cell
+     * @return position
+     */
+    public Point position(int cell) {
+        return topology.position(cell);
+    }
+
+    /**
+     * Road neighbour of a cell. Directions are 0: left, 1: down, 2: up, 3: right.
+     *
+     * @param cell      index of the cell
+     * @param direction of the neighbour
+     * @return index of the neighbour, -1 if outside of the board or not a road
+     */
+    public int neighbour(int cell, int direction) {
+        return topology.neighbour(cell, direction);
+    }
+
+    /**
+     * Shortest distances and directions between road cells. Immutable, queried without locks.
+     *
+     * @return distance table of the board
+     */
+    public DistanceTable distances() {
+        return distances;
+    }
 
-        labyrinth.putRoadSymbol(entity.initPos.y, entity.initPos.x, entity.symbol);
-        mapCache.put(entity.initPos, ' ');
-        entities.add(entity);
-        totalNumberOfPoints = getPositions('.').length;
-        out.println("Updated maximum number of points to " + totalNumberOfPoints);
+    /**
+     * Points and bonuses left on the board. Updated as they are collected, queried without locks.
+     *
+     * @return pellet index of the board
+     */
+    public PelletIndex pellets() {
+        return pellets;
+    }
+
+    /**
+     * Identifier for a new entity. Identifiers are sequential.
+     *
+     * @return new identifier
+     */
+    public int nextEntityId() {
+        return entityIds.getAndIncrement();
     }
 
     /**
@@ -437,7 +1147,7 @@ public class GameController extends CObject {
      * @param symbol to check
      * @return true if active entity
      */
-    public synchronized boolean symbolIsEntity(char symbol) {
+    public boolean symbolIsEntity(char symbol) {
         return symbol == 'C' // inky
                 || symbol == 'P' // pinky
                 || symbol == 'O' // clyde
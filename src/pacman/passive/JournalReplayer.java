@@ -0,0 +1,187 @@
+package pacman.passive;
+
+import pacman.other.EventJournal;
+import pacman.other.JournalReader;
+import pt.ua.concurrent.CThread;
+
+import java.util.Arrays;
+
+import static java.lang.System.out;
+
+/**
+ * Replays a recorded game from its event journal.
+ * Rebuilds the board, points, lives, attack mode and entity positions of the game controller, record by record, on
+ * a board loaded from the same board file, optionally rendered in a GBoard window. Replays run faster than real time,
+ * or as fast as possible.
+ */
+public class JournalReplayer {
+
+    private final String journalPath;
+    private final Board board;
+    private int[] positions = new int[64]; // cell of each entity, by id, -1 if not in the game
+    private int points = 0;
+    private int pacmanLives = -1;
+    private boolean attack = false;
+    private long moves = 0, collisions = 0, kills = 0, spawns = 0, bonuses = 0;
+    private boolean ended = false;
+
+    /**
+     * Initializes a new replayer
+     *
+     * @param journalPath of the journal to replay
+     * @param boardPath   of the board file the game was played on
+     * @param headless    if true the replay is not rendered
+     */
+    public JournalReplayer(String journalPath, String boardPath, boolean headless) {
+        assert journalPath != null;
+        assert boardPath != null;
+
+        this.journalPath = journalPath;
+        this.board = new Board(boardPath, GameController.ALL_SYMBOLS);
+        Arrays.fill(positions, -1);
+
+        if (!headless)
+            board.attachObserver(new GBoardView(board, GameController.ALL_SYMBOLS));
+    }
+
+    /**
+     * Replays the whole journal
+     *
+     * @param speed   game time replayed per unit of real time, 0 to replay as fast as possible
+     * @param verbose if true every record is printed
+     * @return number of records replayed
+     */
+    public long replay(double speed, boolean verbose) {
+        assert speed >= 0;
+
+        long records = 0;
+        long started = System.currentTimeMillis();
+
+        try (JournalReader reader = new JournalReader(journalPath)) {
+            if (reader.columns() != board.numberOfColumns || reader.lines() != board.numberOfLines)
+                throw new IllegalArgumentException("Journal " + journalPath + " was not recorded on board " + board.path());
+
+            while (reader.next()) {
+                if (speed > 0) {
+                    long due = started + (long) ((reader.time() - reader.startTime()) / speed);
+                    long ahead = due - System.currentTimeMillis();
+                    if (ahead > 0)
+                        CThread.pause((int) ahead);
+                }
+
+                if (verbose)
+                    out.println(reader.describe());
+
+                apply(reader);
+                records++;
+            }
+        }
+
+        out.println("Replayed " + records + " records in " + (System.currentTimeMillis() - started) + "ms");
+        out.println("Moves: " + moves + ", collisions: " + collisions + ", kills: " + kills + ", spawns: " + spawns
+                + ", bonuses: " + bonuses);
+        out.println("Points: " + points + (pacmanLives >= 0 ? ", pacman lives: " + pacmanLives : "")
+                + (ended ? ", game ended" : ", game did not end"));
+        return records;
+    }
+
+    /**
+     * Applies a record to the rebuilt state
+     *
+     * @param reader positioned on the record
+     */
+    private void apply(JournalReader reader) {
+        switch (reader.event()) {
+            case MOVE:
+                board.putRoadSymbol(reader.from(), (char) reader.value());
+                board.putRoadSymbol(reader.to(), reader.symbol());
+                place(reader.entity(), reader.to());
+                moves++;
+                break;
+            case PAINT:
+                board.putRoadSymbol(reader.to(), reader.symbol());
+                break;
+            case COLLISION:
+                collisions++;
+                break;
+            case KILL:
+                place(reader.entity(), -1);
+                pacmanLives = reader.value();
+                kills++;
+                break;
+            case SPAWN:
+                place(reader.entity(), reader.to());
+                spawns++;
+                break;
+            case POINT:
+                // concurrent pacmans may record their points out of order
+                points = Math.max(points, reader.value());
+                board.pointsChanged(points);
+                break;
+            case BONUS:
+                attack = true;
+                bonuses++;
+                break;
+            case ATTACK_END:
+                attack = false;
+                break;
+            case GAME_END:
+                points = reader.value();
+                ended = true;
+                break;
+        }
+    }
+
+    /**
+     * Updates the position of an entity
+     *
+     * @param entity id
+     * @param cell   index of the cell, -1 if the entity left the game
+     */
+    private void place(int entity, int cell) {
+        if (entity >= positions.length) {
+            int length = positions.length;
+            positions = Arrays.copyOf(positions, Math.max(length * 2, entity + 1));
+            Arrays.fill(positions, length, positions.length, -1);
+        }
+
+        positions[entity] = cell;
+    }
+
+    /**
+     * Cell of an entity at the current point of the replay
+     *
+     * @param entity id
+     * @return cell index, -1 if the entity is not in the game
+     */
+    public int position(int entity) {
+        return entity < positions.length ? positions[entity] : -1;
+    }
+
+    /**
+     * Pacman points at the current point of the replay
+     *
+     * @return points
+     */
+    public int points() {
+        return points;
+    }
+
+    /**
+     * Checks if the attack mode is on at the current point of the replay
+     *
+     * @return true if ghosts are under attack
+     */
+    public boolean attackMode() {
+        return attack;
+    }
+
+    /**
+     * Board rebuilt by the replay
+     *
+     * @return board
+     */
+    public Board board() {
+        return board;
+    }
+}
@@ -0,0 +1,213 @@
+package pacman.passive;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Seeded procedural maze generator, writing boards in the same text format as the game board.
+ * The maze is carved by a randomized depth first search, with an explicit stack so any size can be generated, and
+ * then some walls are knocked down so the maze has loops. The board holds points ('.') on every road, four bonuses
+ * ('$'), two portals ('?') with their destinations ('!') on the sides, the start of pacman ('X') and of the four
+ * ghosts ('C', 'P', 'O', 'R'), and two free lines at the bottom for the points HUD.
+ * The same seed and size always generate the same board.
+ */
+public class MazeGenerator {
+
+    public static final int MIN_COLUMNS = 11, MIN_LINES = 11;
+    private static final double LOOPS = 0.1; // fraction of inner walls knocked down
+
+    private final int columns, lines;
+    private final SplittableRandom random;
+    private final char[][] rows;
+
+    /**
+     * Initializes a new generator
+     *
+     * @param columns of the board, at least {@value #MIN_COLUMNS}
+     * @param lines   of the board, at least {@value #MIN_LINES}
+     * @param seed    of the maze
+     */
+    public MazeGenerator(int columns, int lines, long seed) {
+        if (columns < MIN_COLUMNS || lines < MIN_LINES)
+            throw new IllegalArgumentException("Mazes must be at least " + MIN_COLUMNS + "x" + MIN_LINES);
+        if ((long) columns * lines * 4 > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Maze is too large: " + columns + "x" + lines);
+
+        this.columns = columns;
+        this.lines = lines;
+        this.random = new SplittableRandom(seed);
+        this.rows = new char[lines][];
+    }
+
+    /**
+     * Generates the maze and writes it to a file
+     *
+     * @param path of the board file to write
+     */
+    public void generate(String path) {
+        assert path != null;
+
+        frame();
+        carve();
+        knockDownWalls();
+        place();
+
+        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(path))) {
+            for (char[] row : rows) {
+                writer.write(row);
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to write maze " + path, e);
+        }
+    }
+
+    /**
+     * Outside border ('_'), wall frame ('#') and walls everywhere inside.
+     * Line 0, the last two lines and the first and last columns are outside.
+     */
+    private void frame() {
+        for (int l = 0; l < lines; l++) {
+            rows[l] = new char[columns];
+            boolean outside = l == 0 || l >= lines - 2;
+            Arrays.fill(rows[l], outside ? '_' : '#');
+            rows[l][0] = '_';
+            rows[l][columns - 1] = '_';
+        }
+    }
+
+    /**
+     * Randomized depth first search over the maze cells, the positions at even offsets from line 2 and column 2
+     */
+    private void carve() {
+        int cellColumns = (columns - 4 + 1) / 2; // inner area is columns 2 to columns - 3
+        int cellLines = (lines - 5 + 1) / 2; // inner area is lines 2 to lines - 4
+        int count = cellColumns * cellLines;
+
+        boolean[] visited = new boolean[count];
+        int[] stack = new int[count];
+        int depth = 0;
+        int[] candidates = new int[4];
+
+        int start = random.nextInt(count);
+        visited[start] = true;
+        stack[depth++] = start;
+        open(start % cellColumns, start / cellColumns);
+
+        while (depth > 0) {
+            int current = stack[depth - 1];
+            int x = current % cellColumns, y = current / cellColumns;
+
+            int n = 0;
+            if (x > 0 && !visited[current - 1]) candidates[n++] = current - 1;
+            if (x < cellColumns - 1 && !visited[current + 1]) candidates[n++] = current + 1;
+            if (y > 0 && !visited[current - cellColumns]) candidates[n++] = current - cellColumns;
+            if (y < cellLines - 1 && !visited[current + cellColumns]) candidates[n++] = current + cellColumns;
+
+            if (n == 0) {
+                depth--;
+                continue;
+            }
+
+            int next = candidates[random.nextInt(n)];
+            int nx = next % cellColumns, ny = next / cellColumns;
+
+            // open the wall between both cells, and the next cell
+            rows[2 + y + ny][2 + x + nx] = '.';
+            open(nx, ny);
+
+            visited[next] = true;
+            stack[depth++] = next;
+        }
+    }
+
+    /**
+     * Opens a maze cell
+     *
+     * @param x column of the cell in the maze cells
+     * @param y line of the cell in the maze cells
+     */
+    private void open(int x, int y) {
+        rows[2 + 2 * y][2 + 2 * x] = '.';
+    }
+
+    /**
+     * Knocks down some walls between two roads, so entities have more than one way around
+     */
+    private void knockDownWalls() {
+        for (int l = 2; l <= lines - 4; l++)
+            for (int c = 2; c <= columns - 3; c++) {
+                if (rows[l][c] != '#' || random.nextDouble() >= LOOPS)
+                    continue;
+
+                boolean horizontal = rows[l][c - 1] == '.' && rows[l][c + 1] == '.';
+                boolean vertical = rows[l - 1][c] == '.' && rows[l + 1][c] == '.';
+                if (horizontal != vertical) // a wall between two roads, not a corner
+                    rows[l][c] = '.';
+            }
+    }
+
+    /**
+     * Places the portals, bonuses and entity starts
+     */
+    private void place() {
+        // portals on a maze line close to the middle, through the wall frame on both sides
+        int line = 2 + 2 * ((lines - 5) / 4);
+        rows[line][1] = '?';
+        rows[line][2] = '!';
+        rows[line][columns - 2] = '?';
+        rows[line][columns - 3] = '!'; // on even inner widths this opens the last column to the maze
+
+        // bonuses close to the corners
+        rows[2][2] = '$';
+        rows[2][lastCellColumn()] = '$';
+        rows[lastCellLine()][2] = '$';
+        rows[lastCellLine()][lastCellColumn()] = '$';
+
+        // pacman at the bottom and the ghosts around the middle, on distinct roads
+        placeNear('X', lastCellLine(), columns / 2);
+        placeNear('R', lines / 2 - 2, columns / 2);
+        placeNear('C', lines / 2, columns / 2 - 2);
+        placeNear('P', lines / 2, columns / 2);
+        placeNear('O', lines / 2, columns / 2 + 2);
+    }
+
+    /**
+     * Places a symbol on the point closest to a position
+     *
+     * @param symbol to place
+     * @param line   of the position
+     * @param column of the position
+     */
+    private void placeNear(char symbol, int line, int column) {
+        for (int radius = 0; ; radius++)
+            for (int l = Math.max(2, line - radius); l <= Math.min(lines - 4, line + radius); l++)
+                for (int c = Math.max(2, column - radius); c <= Math.min(columns - 3, column + radius); c++)
+                    if (rows[l][c] == '.') {
+                        rows[l][c] = symbol;
+                        return;
+                    }
+    }
+
+    /**
+     * Last column holding maze cells
+     *
+     * @return column
+     */
+    private int lastCellColumn() {
+        return 2 + 2 * ((columns - 4 + 1) / 2 - 1);
+    }
+
+    /**
+     * Last line holding maze cells
+     *
+     * @return line
+     */
+    private int lastCellLine() {
+        return 2 + 2 * ((lines - 5 + 1) / 2 - 1);
+    }
+}
@@ -0,0 +1,72 @@
+package pacman.passive;
+
+import pacman.active.Entity;
+
+import java.awt.*;
+import java.util.function.Supplier;
+
+/**
+ * Move of an entity, posted to the region actor that runs it (see {@link RegionActors}). Each entity owns one and
+ * reuses it for all its moves, as an entity has at most one move in progress, so moving through the regions
+ * allocates nothing. The mover fills in the move before posting it and reads the result once the region marked it
+ * done; the mailbox and the done flag order the two.
+ */
+public final class MoveCommand {
+
+    final Entity entity; // null for an action
+    final Supplier<?> action; // run instead of a move, null for a move
+
+    // the move, set by the mover before each post
+    Point pos, from;
+    int generation, cell;
+    long waitStart;
+    final int[] cells = new int[4]; // cells taken by the move, repeated cells are fine
+    final int[] regions = new int[4]; // distinct regions of the cells, in ascending order
+    int involved; // number of regions
+
+    // set by the region that runs the command
+    Object result;
+    Throwable failure;
+    volatile boolean done;
+    Thread waiter;
+    MoveCommand next; // mailbox link
+
+    /**
+     * Initializes the move command of an entity
+     *
+     * @param entity that moves
+     */
+    public MoveCommand(Entity entity) {
+        assert entity != null;
+
+        this.entity = entity;
+        this.action = null;
+    }
+
+    /**
+     * Initializes a command running an action, for the few accesses outside of moves
+     *
+     * @param action to run with exclusive access to the cells
+     */
+    MoveCommand(Supplier<?> action) {
+        assert action != null;
+
+        this.entity = null;
+        this.action = action;
+    }
+
+    /**
+     * Sets the cells taken by the command
+     *
+     * @param a first cell
+     * @param b second cell
+     * @param c third cell
+     * @param d fourth cell
+     */
+    void cells(int a, int b, int c, int d) {
+        cells[0] = a;
+        cells[1] = b;
+        cells[2] = c;
+        cells[3] = d;
+    }
+}
@@ -0,0 +1,43 @@
+package pacman.passive;
+
+import java.util.function.Supplier;
+
+/**
+ * How the game controller gets exclusive access to the cells a move touches (last position, target and, on a portal
+ * jump, both portals and the destination), and to the cells it reads and paints outside of moves.
+ * Either striped cell locks taken by the moving thread ({@link CellLocks}) or region actors that own the cells and
+ * run the moves themselves ({@link RegionActors}). Moves do not go through this interface: the controller takes the
+ * cell locks directly or posts the reused move command of the entity to the regions, so a move allocates nothing.
+ */
+interface MoveProtocol {
+
+    /**
+     * Runs an action with exclusive access to up to four cells. Repeated cells are fine.
+     *
+     * @param a      first cell
+     * @param b      second cell
+     * @param c      third cell
+     * @param d      fourth cell
+     * @param action to run, must not block
+     * @param <T>    result of the action
+     * @return result of the action
+     */
+    <T> T exclusive(int a, int b, int c, int d, Supplier<T> action);
+
+    /**
+     * Runs an action with exclusive access to one cell
+     *
+     * @param cell   index of the cell
+     * @param action to run, must not block
+     * @param <T>    result of the action
+     * @return result of the action
+     */
+    default <T> T exclusive(int cell, Supplier<T> action) {
+        return exclusive(cell, cell, cell, cell, action);
+    }
+
+    /**
+     * Releases the resources of the protocol once the game ended
+     */
+    void shutdown();
+}
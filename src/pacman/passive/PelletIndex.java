@@ -0,0 +1,213 @@
+package pacman.passive;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Spatial index of the pellets left on the board: points ('.') and bonuses ('$').
+ * The board is split in buckets of 8x8 cells and each bucket keeps one bit per cell in a single word, so the word
+ * is both the pellets of the bucket and their live count. A consumed pellet clears its bit with a compare and set, so
+ * the index is updated by moves without any lock. Nearest pellet queries search the buckets in rings of growing
+ * distance around the asking cell, skipping empty buckets with one read each, and stop as soon as no farther ring can
+ * hold a closer pellet; listing the pellets skips empty buckets the same way.
+ */
+public class PelletIndex {
+
+    private static final int SHIFT = 3; // 8x8 cells per bucket
+    private static final int SIZE = 1 << SHIFT;
+    private static final int MASK = SIZE - 1;
+
+    private final int numberOfColumns, numberOfLines;
+    private final int bucketColumns, bucketLines;
+    private final AtomicLongArray points, bonuses;
+    private final AtomicInteger pointsLeft = new AtomicInteger(), bonusesLeft = new AtomicInteger();
+
+    /**
+     * Indexes the pellets of a board
+     *
+     * @param board to index, before any entity moves
+     */
+    PelletIndex(Board board) {
+        assert board != null;
+
+        numberOfColumns = board.numberOfColumns;
+        numberOfLines = board.numberOfLines;
+        bucketColumns = (numberOfColumns + MASK) >> SHIFT;
+        bucketLines = (numberOfLines + MASK) >> SHIFT;
+        points = new AtomicLongArray(bucketColumns * bucketLines);
+        bonuses = new AtomicLongArray(bucketColumns * bucketLines);
+
+        for (int l = 0; l < numberOfLines; l++)
+            for (int c = 0; c < numberOfColumns; c++) {
+                if (!board.isRoad(l, c))
+                    continue;
+
+                char symbol = board.roadSymbol(board.cellIndex(l, c));
+                if (symbol == '.' || symbol == '$') {
+                    AtomicLongArray pellets = symbol == '.' ? points : bonuses;
+                    pellets.set(bucket(l, c), pellets.get(bucket(l, c)) | bit(l, c));
+                    (symbol == '.' ? pointsLeft : bonusesLeft).incrementAndGet();
+                }
+            }
+    }
+
+    /**
+     * Removes a pellet, once consumed
+     *
+     * @param cell   index of the cell
+     * @param symbol of the pellet, '.' or '$'
+     * @return false if there was no such pellet on the cell
+     */
+    boolean consume(int cell, char symbol) {
+        AtomicLongArray pellets = pellets(symbol);
+        int l = cell / numberOfColumns, c = cell % numberOfColumns;
+        int bucket = bucket(l, c);
+        long bit = bit(l, c);
+
+        long word;
+        do {
+            word = pellets.get(bucket);
+            if ((word & bit) == 0)
+                return false;
+        } while (!pellets.compareAndSet(bucket, word, word & ~bit));
+
+        (symbol == '.' ? pointsLeft : bonusesLeft).decrementAndGet();
+        return true;
+    }
+
+    /**
+     * Checks if a pellet is left on a cell
+     *
+     * @param cell   index of the cell
+     * @param symbol of the pellet, '.' or '$'
+     * @return true if left
+     */
+    public boolean contains(int cell, char symbol) {
+        int l = cell / numberOfColumns, c = cell % numberOfColumns;
+        return (pellets(symbol).get(bucket(l, c)) & bit(l, c)) != 0;
+    }
+
+    /**
+     * Number of pellets left
+     *
+     * @param symbol of the pellets, '.' or '$'
+     * @return pellets left
+     */
+    public int count(char symbol) {
+        return (symbol == '.' ? pointsLeft : bonusesLeft).get();
+    }
+
+    /**
+     * Pellet closest to a cell, by distance on the board grid (moves ignoring walls and portals). Ties are broken by
+     * the lowest cell index, so the answer only depends on the pellets left.
+     *
+     * @param cell   index of the cell
+     * @param symbol of the pellets, '.' or '$'
+     * @return index of the closest cell with a pellet, -1 if none is left
+     */
+    public int nearest(int cell, char symbol) {
+        AtomicLongArray pellets = pellets(symbol);
+        if (count(symbol) == 0)
+            return -1;
+
+        int line = cell / numberOfColumns, column = cell % numberOfColumns;
+        int bl = line >> SHIFT, bc = column >> SHIFT;
+        int rings = Math.max(Math.max(bl, bucketLines - 1 - bl), Math.max(bc, bucketColumns - 1 - bc));
+
+        int best = -1, bestDistance = Integer.MAX_VALUE;
+        for (int ring = 0; ring <= rings; ring++) {
+            // any cell of a bucket ring buckets away is at least this far
+            if (ring > 0 && (ring - 1) * SIZE + 1 > bestDistance)
+                break;
+
+            for (int l = Math.max(0, bl - ring); l <= Math.min(bucketLines - 1, bl + ring); l++) {
+                boolean edge = l == bl - ring || l == bl + ring;
+                int step = edge || ring == 0 ? 1 : 2 * ring; // inner lines of a ring only have its two sides
+
+                for (int c = bc - ring; c <= bc + ring; c += step) {
+                    if (c < 0 || c >= bucketColumns)
+                        continue;
+
+                    long word = pellets.get(l * bucketColumns + c);
+                    while (word != 0) {
+                        int b = Long.numberOfTrailingZeros(word);
+                        word &= word - 1;
+
+                        int pl = (l << SHIFT) + (b >> SHIFT), pc = (c << SHIFT) + (b & MASK);
+                        int distance = Math.abs(pl - line) + Math.abs(pc - column);
+                        int candidate = pl * numberOfColumns + pc;
+                        if (distance < bestDistance || distance == bestDistance && candidate < best) {
+                            best = candidate;
+                            bestDistance = distance;
+                        }
+                    }
+                }
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Positions of the pellets left, line by line
+     *
+     * @param symbol of the pellets, '.' or '$'
+     * @return positions
+     */
+    Point[] positions(char symbol) {
+        AtomicLongArray pellets = pellets(symbol);
+        ArrayList<Point> positions = new ArrayList<>(count(symbol));
+
+        for (int line = 0; line < numberOfLines; line++) {
+            int shift = (line & MASK) << SHIFT;
+            int row = (line >> SHIFT) * bucketColumns;
+
+            for (int c = 0; c < bucketColumns; c++) {
+                long bits = pellets.get(row + c) >>> shift & 0xFF; // the line in the bucket
+                while (bits != 0) {
+                    int b = Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    positions.add(new Point((c << SHIFT) + b, line));
+                }
+            }
+        }
+
+        return positions.toArray(new Point[0]);
+    }
+
+    /**
+     * Pellet words of a symbol
+     *
+     * @param symbol '.' or '$'
+     * @return words
+     */
+    private AtomicLongArray pellets(char symbol) {
+        assert symbol == '.' || symbol == '$';
+
+        return symbol == '.' ? points : bonuses;
+    }
+
+    /**
+     * Bucket of a cell
+     *
+     * @param line   of the cell
+     * @param column of the cell
+     * @return bucket index
+     */
+    private int bucket(int line, int column) {
+        return (line >> SHIFT) * bucketColumns + (column >> SHIFT);
+    }
+
+    /**
+     * Bit of a cell in its bucket word
+     *
+     * @param line   of the cell
+     * @param column of the cell
+     * @return bit
+     */
+    private static long bit(int line, int column) {
+        return 1L << ((line & MASK) << SHIFT | column & MASK);
+    }
+}
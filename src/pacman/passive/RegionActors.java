@@ -0,0 +1,342 @@
+package pacman.passive;
+
+import pt.ua.concurrent.CThread;
+import pt.ua.concurrent.ThreadInterruptedException;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Board split in regions (bands of lines), each owned by an actor. Only the owner of a cell touches it: a move is
+ * posted to the mailbox of the region actor and the mover waits for its result, so moves in different regions run
+ * in parallel, each region processing its own moves one at a time, without locks.
+ * A move that touches more than one region (crossing a border, a portal jump, a collision on a border) is run by the
+ * lowest region involved, after a handoff: the other regions are parked one by one, in ascending order, and resume
+ * once the move is done. As regions are always taken in the same order, handoffs never deadlock.
+ * Mailboxes are lock-free stacks linked through the posted commands themselves, which the movers reuse, and actors,
+ * movers and parked regions wait by parking their threads, so a move allocates nothing and enters no monitor.
+ */
+class RegionActors implements MoveProtocol {
+
+    private static final MoveCommand CLOSED = new MoveCommand(() -> null); // mailbox head of a stopped region
+
+    private final Region[] regions;
+    private final int numberOfColumns;
+    private final int linesPerRegion;
+    private final Function<MoveCommand, Object> moves; // runs a move, with exclusive access to its cells
+    private volatile boolean stopped = false;
+
+    /**
+     * Region actor: runs the commands posted to its mailbox, in the order they were posted
+     */
+    private class Region extends CThread {
+
+        private final AtomicReference<MoveCommand> mailbox = new AtomicReference<>(); // last posted first
+        private final Handoff handoff; // of the moves this region runs for several regions
+        private volatile boolean idle = false; // set before parking with an empty mailbox
+
+        /**
+         * Initializes a region actor
+         *
+         * @param index of the region
+         */
+        Region(int index) {
+            handoff = new Handoff(index);
+            setName("region " + index);
+            setDaemon(true);
+        }
+
+        /**
+         * Posts a command to the mailbox. Does not block.
+         *
+         * @param command to run by the actor, not posted anywhere else
+         * @throws ThreadInterruptedException if the region was stopped
+         */
+        void post(MoveCommand command) {
+            MoveCommand head;
+            do {
+                head = mailbox.get();
+                if (head == CLOSED)
+                    throw new ThreadInterruptedException();
+                command.next = head;
+            } while (!mailbox.compareAndSet(head, command));
+
+            // read after the post: either the actor sees the command before parking, or it is unparked here
+            if (idle)
+                LockSupport.unpark(this);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                boolean last = stopped;
+                MoveCommand posted = mailbox.getAndSet(last ? CLOSED : null);
+
+                if (posted == null) {
+                    if (last)
+                        return;
+                    awaitPosted();
+                    continue;
+                }
+
+                // the mailbox is a stack, reversed in place to run the commands in posting order
+                MoveCommand first = null;
+                while (posted != null) {
+                    MoveCommand next = posted.next;
+                    posted.next = first;
+                    first = posted;
+                    posted = next;
+                }
+
+                while (first != null) {
+                    MoveCommand next = first.next;
+                    first.next = null;
+                    execute(first);
+                    first = next;
+                }
+
+                if (last)
+                    return;
+            }
+        }
+
+        /**
+         * Parks until a command is posted or the region is stopped
+         */
+        private void awaitPosted() {
+            idle = true;
+            // checked again once idle is set: a mover posting after this check sees idle and unparks
+            while (mailbox.get() == null && !stopped)
+                LockSupport.park(this);
+            idle = false;
+        }
+
+        /**
+         * Runs a command, parking the other regions it involves, and hands the result to its waiter
+         *
+         * @param command to run
+         */
+        private void execute(MoveCommand command) {
+            Thread waiter = command.waiter; // read first, the command may be reused once done
+            try {
+                command.result = command.involved > 1 ? handoff.run(command) : perform(command);
+            } catch (RuntimeException | Error e) {
+                command.failure = e;
+            }
+
+            command.done = true;
+            if (waiter != null)
+                LockSupport.unpark(waiter);
+        }
+    }
+
+    /**
+     * Handoff of the regions of a multi region move to the region that runs it. Each region has one, reused by every
+     * handoff it coordinates, and one park request for each region above it.
+     */
+    private class Handoff {
+
+        private final MoveCommand[] parkRequests;
+        private final AtomicInteger parked = new AtomicInteger();
+        private volatile long epoch = 0; // handoff in progress
+        private volatile long released = 0; // last handoff whose regions were resumed
+        private Thread coordinator;
+
+        /**
+         * Initializes the handoff of a region
+         *
+         * @param index of the region
+         */
+        Handoff(int index) {
+            parkRequests = new MoveCommand[regions.length];
+            for (int i = index + 1; i < regions.length; i++)
+                parkRequests[i] = new MoveCommand(this::park);
+        }
+
+        /**
+         * Run by the coordinator: parks the other regions of the command, in ascending order, runs it and resumes
+         * them
+         *
+         * @param command to run
+         * @return result of the command
+         */
+        Object run(MoveCommand command) {
+            coordinator = Thread.currentThread();
+            parked.set(0);
+            long current = ++epoch;
+            try {
+                for (int i = 1; i < command.involved; i++) {
+                    regions[command.regions[i]].post(parkRequests[command.regions[i]]);
+                    while (parked.get() < i)
+                        LockSupport.park(this);
+                }
+
+                return perform(command);
+            } finally {
+                released = current;
+                for (int i = 1; i < command.involved; i++)
+                    LockSupport.unpark(regions[command.regions[i]]);
+            }
+        }
+
+        /**
+         * Run by a parked region: waits for the coordinator to finish the move
+         *
+         * @return nothing
+         */
+        private Object park() {
+            long current = epoch; // the coordinator waits for this region, its handoff cannot change meanwhile
+            parked.incrementAndGet();
+            LockSupport.unpark(coordinator);
+
+            while (released < current)
+                LockSupport.park(this);
+
+            return null;
+        }
+    }
+
+    /**
+     * Starts the region actors of a board
+     *
+     * @param board   to split
+     * @param regions number of regions
+     * @param moves   runs a move command, once the region has exclusive access to its cells
+     */
+    RegionActors(Board board, int regions, Function<MoveCommand, Object> moves) {
+        assert board != null;
+        assert regions > 0;
+        assert moves != null;
+
+        this.moves = moves;
+        numberOfColumns = board.numberOfColumns;
+        linesPerRegion = (board.numberOfLines + regions - 1) / regions;
+        this.regions = new Region[(board.numberOfLines + linesPerRegion - 1) / linesPerRegion];
+
+        for (int i = 0; i < this.regions.length; i++)
+            this.regions[i] = new Region(i);
+        for (Region region : this.regions)
+            region.start();
+    }
+
+    /**
+     * Number of regions
+     *
+     * @return regions
+     */
+    int numberOfRegions() {
+        return regions.length;
+    }
+
+    /**
+     * Posts a move to the lowest region of its cells and waits for its result. The command is reused by the next
+     * move of the entity, so the mover waits for it to run even if interrupted meanwhile; the interrupt is kept for
+     * the next pause of the mover.
+     *
+     * @param command filled in move of an entity
+     * @return result of the move
+     * @throws ThreadInterruptedException if the game ended
+     */
+    Object move(MoveCommand command) {
+        if (stopped)
+            throw new ThreadInterruptedException();
+
+        involve(command);
+        command.result = null;
+        command.failure = null;
+        command.done = false;
+        command.waiter = Thread.currentThread();
+        regions[command.regions[0]].post(command);
+
+        boolean interrupted = false;
+        while (!command.done) {
+            LockSupport.park(this);
+            interrupted |= Thread.interrupted();
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+
+        if (command.failure instanceof RuntimeException)
+            throw (RuntimeException) command.failure;
+        if (command.failure != null)
+            throw (Error) command.failure;
+
+        return command.result;
+    }
+
+    /**
+     * Posts the action to the lowest region of the cells and waits for its result. Allocates a command, for the few
+     * accesses outside of moves.
+     *
+     * @throws ThreadInterruptedException if the game ended
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T exclusive(int a, int b, int c, int d, Supplier<T> action) {
+        MoveCommand command = new MoveCommand(action);
+        command.cells(a, b, c, d);
+        return (T) move(command);
+    }
+
+    /**
+     * Runs a command, with exclusive access to its cells
+     *
+     * @param command to run
+     * @return result of the command
+     */
+    private Object perform(MoveCommand command) {
+        return command.action != null ? command.action.get() : moves.apply(command);
+    }
+
+    /**
+     * Sets the distinct regions of the cells of a command, in ascending order
+     *
+     * @param command with its cells set
+     */
+    private void involve(MoveCommand command) {
+        int a = region(command.cells[0]);
+        int b = region(command.cells[1]);
+        int c = region(command.cells[2]);
+        int d = region(command.cells[3]);
+
+        // sorting network for the four regions
+        int t;
+        if (a > b) { t = a; a = b; b = t; }
+        if (c > d) { t = c; c = d; d = t; }
+        if (a > c) { t = a; a = c; c = t; }
+        if (b > d) { t = b; b = d; d = t; }
+        if (b > c) { t = b; b = c; c = t; }
+
+        int n = 0;
+        command.regions[n++] = a;
+        if (b != a) command.regions[n++] = b;
+        if (c != b) command.regions[n++] = c;
+        if (d != c) command.regions[n++] = d;
+        command.involved = n;
+    }
+
+    /**
+     * Region owning a cell
+     *
+     * @param cell index of the cell
+     * @return region index
+     */
+    private int region(int cell) {
+        return cell / numberOfColumns / linesPerRegion;
+    }
+
+    /**
+     * Stops the region actors once they ran the commands already posted. Moves posted afterwards fail with a
+     * ThreadInterruptedException.
+     */
+    @Override
+    public void shutdown() {
+        stopped = true;
+
+        for (Region region : regions)
+            LockSupport.unpark(region);
+    }
+}
@@ -0,0 +1,171 @@
+package pacman.passive;
+
+import pacman.active.Entity;
+import pacman.active.ExecutionMode;
+import pacman.active.Ghost;
+import pacman.active.Pacman;
+import pt.ua.concurrent.CObject;
+import pt.ua.concurrent.CThread;
+import pt.ua.concurrent.ThreadInterruptedException;
+
+import java.util.ArrayDeque;
+
+/**
+ * Respawns killed entities outside of the game controller critical sections.
+ * A kill only requests a respawn. Once due (after an optional delay, kept by the game timers) the killed entity is
+ * waited to stop and is then recycled, or replaced by a new one if it cannot be recycled, and started again.
+ * In thread modes respawns are done by a respawner thread; in tick mode by the tick engine when it advances the
+ * timers, using the game clock, so games stay reproducible.
+ */
+class RespawnService extends CObject {
+
+    private final GameController gc;
+    private final ArrayDeque<Respawn> due = new ArrayDeque<>();
+    private volatile int delay = 0;
+    private CThread respawner;
+    private boolean stopped = false;
+
+    /**
+     * A requested respawn
+     */
+    private static class Respawn {
+        final Entity entity;
+        final long requested = System.nanoTime();
+
+        Respawn(Entity entity) {
+            this.entity = entity;
+        }
+    }
+
+    /**
+     * Initializes a new respawn service
+     *
+     * @param gc game controller
+     */
+    RespawnService(GameController gc) {
+        assert gc != null;
+
+        this.gc = gc;
+    }
+
+    /**
+     * Sets the time between a kill and the respawn
+     *
+     * @param delay in milliseconds of game time
+     */
+    void setDelay(int delay) {
+        assert delay >= 0;
+
+        this.delay = delay;
+    }
+
+    /**
+     * Requests the respawn of a killed entity, once the respawn delay passed. Does not block.
+     *
+     * @param entity killed, already interrupted
+     */
+    void request(Entity entity) {
+        assert entity != null && entity.isInterrupted();
+
+        Respawn respawn = new Respawn(entity);
+        gc.timers().schedule(delay, () -> due(respawn));
+    }
+
+    /**
+     * Discards the due respawns and stops the respawner
+     */
+    synchronized void stop() {
+        stopped = true;
+        due.clear();
+
+        if (respawner != null)
+            respawner.interrupt();
+    }
+
+    /**
+     * The delay of a respawn passed. In tick mode the respawn is done right away, by the tick engine advancing the
+     * timers, otherwise it is handed to the respawner.
+     *
+     * @param respawn due
+     */
+    private void due(Respawn respawn) {
+        if (gc.executionMode() == ExecutionMode.TICK) {
+            respawn(respawn);
+            return;
+        }
+
+        synchronized (this) {
+            if (stopped)
+                return;
+
+            due.add(respawn);
+
+            if (respawner == null) {
+                respawner = new CThread(this::respawnForever, "respawner");
+                respawner.setDaemon(true);
+                respawner.start();
+            }
+            broadcast();
+        }
+    }
+
+    /**
+     * Respawner thread: respawns entities as they become due, until stopped
+     */
+    private void respawnForever() {
+        try {
+            //noinspection InfiniteLoopStatement
+            while (true)
+                respawn(takeDue());
+        } catch (ThreadInterruptedException ex) {
+            // game ended
+        }
+    }
+
+    /**
+     * Waits for the next due respawn
+     *
+     * @return due respawn
+     */
+    private synchronized Respawn takeDue() {
+        while (due.isEmpty())
+            await();
+
+        return due.poll();
+    }
+
+    /**
+     * Brings a killed entity back
+     *
+     * @param respawn to do
+     */
+    private void respawn(Respawn respawn) {
+        Entity entity = respawn.entity;
+        entity.awaitStopped();
+
+        if (entity.recyclable()) {
+            entity.recycle();
+            gc.metrics().recycled();
+        } else {
+            entity = replacement(entity);
+        }
+
+        if (gc.respawned(entity))
+            gc.metrics().spawned(System.nanoTime() - respawn.requested);
+    }
+
+    /**
+     * New entity equal to a killed one
+     *
+     * @param entity killed
+     * @return new entity, not started
+     */
+    private Entity replacement(Entity entity) {
+        if (entity.isGhost()) {
+            Ghost ghost = (Ghost) entity;
+            return new Ghost(entity.getName(), gc, entity.initialSymbol, entity.initPos, entity.initialSpeed, ghost.attackModeSlowdownFactor, ghost.blinkSpeed);
+        }
+
+        return new Pacman(entity.getName(), gc, entity.initialSymbol, entity.initPos, entity.getInitialSpeed());
+    }
+}
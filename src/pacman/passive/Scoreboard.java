@@ -0,0 +1,255 @@
+package pacman.passive;
+
+import pt.ua.concurrent.PersistentSignal;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Score of a game: points, pacman lives and kills, for the whole game and for each entity, and the end of the game.
+ * Counters are atomic, so pacmans collecting points in different cells do not serialize on the game controller
+ * lock. The points and lives counters are exact, so the move that collects the last point, or takes the last
+ * life, is the only one to see it. The end of the game is claimed exactly once, and signalled once it is over.
+ */
+public class Scoreboard {
+
+    private static final int PAGE_SHIFT = 10; // 1024 entities per page
+    private static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+    private static final int POINTS = 0, KILLS = 1, DEATHS = 2, COUNTERS = 3;
+
+    private final AtomicInteger points = new AtomicInteger();
+    private final AtomicInteger totalPoints = new AtomicInteger();
+    private final AtomicInteger pacmanLives;
+    private final LongAdder pacmanKills = new LongAdder();
+    private final LongAdder ghostKills = new LongAdder();
+    private final AtomicBoolean ended = new AtomicBoolean();
+    private final PersistentSignal endSignal = new PersistentSignal();
+    // counters of each entity, by id, in pages allocated as ids grow
+    private volatile AtomicIntegerArray[] pages = new AtomicIntegerArray[1];
+    private final ReentrantLock pageLock = new ReentrantLock(); // taken by a kill in the middle of a move
+
+    /**
+     * Initializes an empty scoreboard
+     *
+     * @param pacmanLives lives of pacman, -1 for infinite lives
+     * @param totalPoints points to collect to win
+     */
+    Scoreboard(int pacmanLives, int totalPoints) {
+        assert totalPoints >= 0;
+
+        this.pacmanLives = new AtomicInteger(pacmanLives);
+        this.totalPoints.set(totalPoints);
+    }
+
+    /**
+     * A point was collected
+     *
+     * @param entity id of the pacman that collected it
+     * @return points collected so far, the total points for the last point
+     */
+    int pointCollected(int entity) {
+        page(entity).incrementAndGet(slot(entity, POINTS));
+        return points.incrementAndGet();
+    }
+
+    /**
+     * An entity was killed
+     *
+     * @param victim id of the killed entity
+     * @param ghost  if the victim is a ghost
+     * @param killer id of the entity that killed it
+     */
+    void killed(int victim, boolean ghost, int killer) {
+        (ghost ? ghostKills : pacmanKills).increment();
+        page(victim).incrementAndGet(slot(victim, DEATHS));
+        page(killer).incrementAndGet(slot(killer, KILLS));
+    }
+
+    /**
+     * Pacman lost a life
+     *
+     * @return lives left, 0 for the last life
+     */
+    int lifeLost() {
+        return pacmanLives.decrementAndGet();
+    }
+
+    /**
+     * An entity placed over a point, the point can no longer be collected
+     *
+     * @return points to collect to win
+     */
+    int pointCovered() {
+        return totalPoints.decrementAndGet();
+    }
+
+    /**
+     * Claims the end of the game
+     *
+     * @return true for the only caller that ends the game
+     */
+    boolean claimEnd() {
+        return ended.compareAndSet(false, true);
+    }
+
+    /**
+     * Signals the end of the game is over, once the game was stopped
+     */
+    void signalEnd() {
+        assert ended.get();
+
+        endSignal.send();
+    }
+
+    /**
+     * Waits for the end of the game
+     */
+    void awaitEnd() {
+        endSignal.await();
+    }
+
+    /**
+     * Checks if the end of the game was claimed
+     *
+     * @return true if the game ended, or is ending
+     */
+    public boolean ended() {
+        return ended.get();
+    }
+
+    /**
+     * Points collected by all pacmans
+     *
+     * @return points
+     */
+    public int points() {
+        return points.get();
+    }
+
+    /**
+     * Points to collect to win
+     *
+     * @return total number of points
+     */
+    public int totalPoints() {
+        return totalPoints.get();
+    }
+
+    /**
+     * Lives of pacman left
+     *
+     * @return lives, negative for infinite lives
+     */
+    public int pacmanLives() {
+        return pacmanLives.get();
+    }
+
+    /**
+     * Kills of the game
+     *
+     * @param ghosts if true ghosts killed, otherwise pacmans killed
+     * @return kills
+     */
+    public long kills(boolean ghosts) {
+        return (ghosts ? ghostKills : pacmanKills).sum();
+    }
+
+    /**
+     * Points collected by an entity
+     *
+     * @param entity id
+     * @return points
+     */
+    public int points(int entity) {
+        return counter(entity, POINTS);
+    }
+
+    /**
+     * Entities killed by an entity
+     *
+     * @param entity id
+     * @return kills
+     */
+    public int kills(int entity) {
+        return counter(entity, KILLS);
+    }
+
+    /**
+     * Times an entity was killed
+     *
+     * @param entity id
+     * @return deaths
+     */
+    public int deaths(int entity) {
+        return counter(entity, DEATHS);
+    }
+
+    /**
+     * Reads a counter of an entity without allocating its page
+     *
+     * @param entity  id
+     * @param counter index
+     * @return value, 0 for entities with no score
+     */
+    private int counter(int entity, int counter) {
+        assert entity >= 0;
+
+        AtomicIntegerArray[] p = pages;
+        int index = entity >>> PAGE_SHIFT;
+        return index < p.length && p[index] != null ? p[index].get(slot(entity, counter)) : 0;
+    }
+
+    /**
+     * Slot of a counter of an entity in its page
+     *
+     * @param entity  id
+     * @param counter index
+     * @return slot
+     */
+    private static int slot(int entity, int counter) {
+        return (entity & PAGE_MASK) * COUNTERS + counter;
+    }
+
+    /**
+     * Page of the counters of an entity, allocated on first use
+     *
+     * @param entity id
+     * @return page
+     */
+    private AtomicIntegerArray page(int entity) {
+        assert entity >= 0;
+
+        AtomicIntegerArray[] p = pages;
+        int index = entity >>> PAGE_SHIFT;
+        if (index < p.length && p[index] != null)
+            return p[index];
+
+        return allocate(index);
+    }
+
+    /**
+     * Allocates a page, unless another thread already did. Pages are allocated once per 1024 entities.
+     *
+     * @param index of the page
+     * @return page
+     */
+    private AtomicIntegerArray allocate(int index) {
+        pageLock.lock();
+        try {
+            AtomicIntegerArray[] p = pages;
+            if (index < p.length && p[index] != null)
+                return p[index];
+
+            p = Arrays.copyOf(p, Math.max(p.length, index + 1));
+            p[index] = new AtomicIntegerArray((PAGE_MASK + 1) * COUNTERS);
+            pages = p; // publishes the page
+            return p[index];
+        } finally {
+            pageLock.unlock();
+        }
+    }
+}
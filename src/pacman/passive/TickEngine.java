@@ -0,0 +1,218 @@
+package pacman.passive;
+
+import pacman.active.Entity;
+import pacman.active.ExecutionMode;
+import pt.ua.concurrent.CThread;
+
+import java.awt.*;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Deterministic simulation engine, an alternative to one thread per entity.
+ * The game advances in discrete ticks. On each tick the entities that are due to move plan their move in parallel,
+ * only reading the game state, and then all planned moves are committed one by one, in entity order, through the
+ * same move and collision rules used by the threaded entities. Entity speeds become multiples of the tick.
+ * Given the same seed, a game is always played the same way.
+ */
+public class TickEngine {
+
+    private static final int PLAN_THRESHOLD = 32;
+
+    private final GameController gc;
+    private final long seed;
+    private final int tickMillis;
+    private final boolean paced;
+    private final ForkJoinPool pool;
+    private long[] nextStep = new long[64]; // tick of the next move, by entity id
+    private Entity[] due = new Entity[64];
+    private Point[] plans = new Point[64];
+
+    /**
+     * Initializes a new tick engine
+     *
+     * @param gc          game controller, in tick execution mode
+     * @param seed        of the entities random walks
+     * @param tickMillis  game time of a tick
+     * @param parallelism number of threads planning moves, 1 to plan sequentially
+     * @param paced       if true each tick lasts tickMillis of real time, otherwise the game runs as fast as possible
+     */
+    public TickEngine(GameController gc, long seed, int tickMillis, int parallelism, boolean paced) {
+        assert gc != null;
+        assert gc.executionMode() == ExecutionMode.TICK;
+        assert tickMillis > 0;
+        assert parallelism > 0;
+
+        this.gc = gc;
+        this.seed = seed;
+        this.tickMillis = tickMillis;
+        this.paced = paced;
+        this.pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+    }
+
+    /**
+     * Runs the game until it ends
+     *
+     * @param maxTicks maximum number of ticks to run, for endless games
+     * @return number of ticks run
+     */
+    public long run(long maxTicks) {
+        assert maxTicks > 0;
+
+        long tick = 0;
+        Entity[] entities = schedule(gc.entitiesSnapshot(), tick);
+
+        try {
+            while (gc.gameInProgress()) {
+                long next = nextTick(entities);
+                if (next > maxTicks)
+                    break;
+
+                if (paced && next > tick)
+                    CThread.pause((int) ((next - tick) * tickMillis));
+
+                tick = next;
+                gc.advanceClock(tick * tickMillis);
+
+                step(entities, tick);
+                gc.runTimers(); // respawns of this tick kills, without delay
+
+                entities = schedule(gc.entitiesSnapshot(), tick);
+            }
+        } finally {
+            if (pool != null)
+                pool.shutdown();
+        }
+
+        return tick;
+    }
+
+    /**
+     * Plans and commits the moves of the entities due on a tick
+     *
+     * @param entities of the game
+     * @param tick     current tick
+     */
+    private void step(Entity[] entities, long tick) {
+        int n = 0;
+        for (Entity entity : entities) {
+            if (entity.isAlive() && nextStep[entity.id] == tick) {
+                if (n == due.length) {
+                    due = Arrays.copyOf(due, n * 2);
+                    plans = Arrays.copyOf(plans, n * 2);
+                }
+                due[n++] = entity;
+            }
+        }
+
+        // plan phase: only reads the game state, so entities plan in parallel
+        if (pool == null || n <= PLAN_THRESHOLD)
+            plan(0, n);
+        else
+            pool.invoke(new PlanTask(0, n));
+
+        // commit phase: one at a time, in entity order
+        for (int i = 0; i < n; i++) {
+            Entity entity = due[i];
+
+            if (entity.isAlive() && plans[i] != null) {
+                Point pos = gc.reportPosition(entity, plans[i]);
+
+                if (entity.isAlive())
+                    entity.stepCommitted(pos);
+            }
+
+            nextStep[entity.id] = tick + period(entity);
+            due[i] = null;
+            plans[i] = null;
+        }
+    }
+
+    /**
+     * Plans the moves of a range of the due entities
+     *
+     * @param from first index, inclusive
+     * @param to   last index, exclusive
+     */
+    private void plan(int from, int to) {
+        for (int i = from; i < to; i++)
+            plans[i] = due[i].planStep();
+    }
+
+    /**
+     * Schedules the first move of entities that were started, or started again after being recycled
+     *
+     * @param entities of the game
+     * @param tick     current tick
+     * @return the entities
+     */
+    private Entity[] schedule(Entity[] entities, long tick) {
+        for (Entity entity : entities) {
+            if (entity.id >= nextStep.length)
+                nextStep = Arrays.copyOf(nextStep, Math.max(nextStep.length * 2, entity.id + 1));
+
+            if (entity.isAlive() && !entity.stepsPrepared()) {
+                entity.prepareSteps(seed ^ (entity.id * 0x9E3779B97F4A7C15L) ^ (entity.generation() * 0xC2B2AE3D27D4EB4FL));
+                nextStep[entity.id] = tick + period(entity);
+            }
+        }
+
+        return entities;
+    }
+
+    /**
+     * Next tick where something happens: an entity moves or a timer (attack mode end, respawn) expires
+     *
+     * @param entities of the game
+     * @return next tick
+     */
+    private long nextTick(Entity[] entities) {
+        long next = Long.MAX_VALUE;
+
+        for (Entity entity : entities)
+            if (entity.isAlive())
+                next = Math.min(next, nextStep[entity.id]);
+
+        long deadline = gc.timers().nextDeadline();
+        if (deadline != Long.MAX_VALUE)
+            next = Math.min(next, (deadline + tickMillis - 1) / tickMillis);
+
+        return next;
+    }
+
+    /**
+     * Number of ticks between two moves of an entity
+     *
+     * @param entity to check
+     * @return ticks per move, at least one
+     */
+    private long period(Entity entity) {
+        return Math.max(1, Math.round(entity.speed() / (double) tickMillis));
+    }
+
+    /**
+     * Fork-join task planning a range of the due entities
+     */
+    private class PlanTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int from, to;
+
+        PlanTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PLAN_THRESHOLD) {
+                plan(from, to);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new PlanTask(from, middle), new PlanTask(middle, to));
+            }
+        }
+    }
+}
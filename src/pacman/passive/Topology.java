@@ -0,0 +1,183 @@
+package pacman.passive;
+
+import java.awt.*;
+import java.util.ArrayList;
+
+/**
+ * Static layout of a board: its size, which cells are road, their neighbours, and where each symbol was when the
+ * board was loaded (entity starts, portals, points). Built once when the board is loaded and never changed
+ * afterwards, so every query is answered without locks, concurrently with the moves that change the road symbols.
+ * The road is a bitset, one bit per cell.
+ */
+public final class Topology {
+
+    private static final Point[] NONE = new Point[0];
+
+    public final int numberOfLines;
+    public final int numberOfColumns;
+    private final long[] road;
+    private final int[] neighbours; // four per cell, in direction order, -1 if none
+    private final Point[] positions; // one shared position per road cell, null elsewhere
+    private final Point[][] symbolPositions; // by symbol, line by line, symbols below 128 only
+
+    /**
+     * Builds the topology of a loaded board
+     *
+     * @param numberOfLines   of the board
+     * @param numberOfColumns of the board
+     * @param road            if each cell is a road
+     * @param symbols         loaded symbol of each cell
+     */
+    Topology(int numberOfLines, int numberOfColumns, boolean[] road, char[] symbols) {
+        assert numberOfLines > 0 && numberOfColumns > 0;
+        assert road.length == numberOfLines * numberOfColumns;
+        assert symbols.length == road.length;
+
+        this.numberOfLines = numberOfLines;
+        this.numberOfColumns = numberOfColumns;
+
+        int cells = road.length;
+        this.road = new long[(cells + 63) >>> 6];
+        positions = new Point[cells];
+        for (int cell = 0; cell < cells; cell++)
+            if (road[cell]) {
+                this.road[cell >>> 6] |= 1L << cell;
+                positions[cell] = new Point(cell % numberOfColumns, cell / numberOfColumns);
+            }
+
+        // the road never changes once loaded, so neighbours are computed once
+        neighbours = new int[cells * 4];
+        for (int cell = 0; cell < cells; cell++)
+            for (int direction = 0; direction < 4; direction++)
+                neighbours[cell * 4 + direction] = computeNeighbour(cell, direction);
+
+        ArrayList<ArrayList<Point>> bySymbol = new ArrayList<>(128);
+        for (int symbol = 0; symbol < 128; symbol++)
+            bySymbol.add(null);
+        for (int cell = 0; cell < cells; cell++) {
+            char symbol = symbols[cell];
+            if (!road[cell] || symbol >= 128)
+                continue;
+            if (bySymbol.get(symbol) == null)
+                bySymbol.set(symbol, new ArrayList<>());
+            bySymbol.get(symbol).add(positions[cell]);
+        }
+
+        symbolPositions = new Point[128][];
+        for (int symbol = 0; symbol < 128; symbol++)
+            symbolPositions[symbol] = bySymbol.get(symbol) == null ? NONE : bySymbol.get(symbol).toArray(NONE);
+    }
+
+    /**
+     * Number of cells of the board
+     *
+     * @return lines times columns
+     */
+    public int numberOfCells() {
+        return positions.length;
+    }
+
+    /**
+     * Checks if the position is inside the board
+     *
+     * @param line   of the position
+     * @param column of the position
+     * @return true if valid
+     */
+    public boolean validPosition(int line, int column) {
+        return line >= 0 && line < numberOfLines && column >= 0 && column < numberOfColumns;
+    }
+
+    /**
+     * Index of a position in the board cells
+     *
+     * @param line   of the position
+     * @param column of the position
+     * @return cell index
+     */
+    public int cellIndex(int line, int column) {
+        assert validPosition(line, column);
+
+        return line * numberOfColumns + column;
+    }
+
+    /**
+     * Checks if a cell is a road
+     *
+     * @param cell index of the cell
+     * @return true if road
+     */
+    public boolean isRoad(int cell) {
+        return (road[cell >>> 6] & 1L << cell) != 0;
+    }
+
+    /**
+     * Checks if the position is a road
+     *
+     * @param line   of the position
+     * @param column of the position
+     * @return true if road
+     */
+    public boolean isRoad(int line, int column) {
+        assert validPosition(line, column);
+
+        return isRoad(line * numberOfColumns + column);
+    }
+
+    /**
+     * Road neighbour of a cell. Directions are 0: left, 1: down, 2: up, 3: right.
+     *
+     * @param cell      index of the cell
+     * @param direction of the neighbour
+     * @return index of the neighbour, -1 if outside of the board or not a road
+     */
+    public int neighbour(int cell, int direction) {
+        return neighbours[cell * 4 + direction];
+    }
+
+    /**
+     * Position of a road cell. Positions are shared and must not be modified.
+     *
+     * @param cell index of the cell
+     * @return position
+     */
+    public Point position(int cell) {
+        assert positions[cell] != null : "not a road cell";
+
+        return positions[cell];
+    }
+
+    /**
+     * Road positions that held a symbol when the board was loaded, line by line
+     *
+     * @param symbol to look for
+     * @return new array of shared positions, that must not be modified
+     */
+    public Point[] positionsOf(char symbol) {
+        return symbol < 128 ? symbolPositions[symbol].clone() : NONE;
+    }
+
+    /**
+     * Computes a road neighbour of a cell, see {@link #neighbour(int, int)}
+     *
+     * @param cell      index of the cell
+     * @param direction of the neighbour
+     * @return index of the neighbour, -1 if outside of the board or not a road
+     */
+    private int computeNeighbour(int cell, int direction) {
+        int line = cell / numberOfColumns;
+        int column = cell % numberOfColumns;
+
+        switch (direction) {
+            case 0: column--; break;
+            case 1: line++; break;
+            case 2: line--; break;
+            default: column++; break;
+        }
+
+        if (!validPosition(line, column) || !isRoad(line * numberOfColumns + column))
+            return -1;
+
+        return line * numberOfColumns + column;
+    }
+}
@@ -0,0 +1,266 @@
+package pacman.passive;
+
+import pacman.active.Entity;
+import pacman.other.EventLog;
+import pacman.other.MoveStats;
+import pt.ua.concurrent.CThread;
+import pt.ua.concurrent.ThreadInterruptedException;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.LockInfo;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.lang.System.out;
+
+/**
+ * Periodically checks that every entity of a game gets to move. For each running entity it compares the moves
+ * committed since the last check with the moves its speed asks for, and looks at the time since its last move and
+ * the 99th percentile of the time its moves waited for their cells. Entities moving at less than half their rate are
+ * flagged as starved, entities that did not move for {@value #STALLED_MOVES} of their moves as stalled, and platform
+ * threads blocked on each other's locks as deadlocked, in which case every thread stack is printed. Each flag is
+ * logged once, when raised. Registered in the platform MBean server as pacman:type=Watchdog,name=game&lt;n&gt;,
+ * where a stack dump can also be asked for on demand. Runs as a daemon, it does not keep the game alive.
+ */
+public class Watchdog extends CThread implements WatchdogMXBean {
+
+    private static final double STARVED_RATIO = 0.5;
+    private static final int STALLED_MOVES = 20;
+    private static final int MIN_WINDOW_MOVES = 4; // moves a window must ask for to measure a rate
+    private static final AtomicInteger watchdogs = new AtomicInteger();
+
+    private final GameController gc;
+    private final int periodMillis;
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    // moves and game time at the start of the window of each entity, and the entities flagged, watchdog thread only
+    private Map<Entity, long[]> windows = new IdentityHashMap<>();
+    private Map<Entity, Boolean> flagged = new IdentityHashMap<>(); // true if stalled, false if starved
+    private volatile int starved = 0, stalled = 0, deadlocked = 0;
+    private volatile double lowestRateRatio = 1;
+    private volatile long highestWaitP99 = 0;
+
+    /**
+     * Initializes a new watchdog
+     *
+     * @param gc           game controller to watch
+     * @param periodMillis time between two checks
+     */
+    public Watchdog(GameController gc, int periodMillis) {
+        assert gc != null;
+        assert periodMillis > 0;
+
+        this.gc = gc;
+        this.periodMillis = periodMillis;
+        setName("watchdog");
+        setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+        ObjectName name = register();
+
+        try {
+            while (gc.gameInProgress()) {
+                pause(periodMillis);
+                check();
+            }
+        } catch (ThreadInterruptedException ex) {
+            // stopped
+        } finally {
+            unregister(name);
+        }
+    }
+
+    /**
+     * Stops the watchdog, waiting for it to finish its check
+     */
+    public void finish() {
+        interrupt();
+        ajoin();
+    }
+
+    /**
+     * Checks every running entity and the threads, and logs the flags raised
+     */
+    void check() {
+        long now = gc.now();
+        Map<Entity, long[]> nextWindows = new IdentityHashMap<>();
+        Map<Entity, Boolean> nextFlagged = new IdentityHashMap<>();
+        int starved = 0, stalled = 0;
+        double lowest = 1;
+        long highest = 0;
+
+        for (Entity entity : gc.entitiesSnapshot()) {
+            if (!entity.isAlive() || entity.isInterrupted())
+                continue; // waiting for its respawn, or the game ended
+
+            MoveStats stats = entity.moveStats();
+            long moves = stats.moves();
+            long[] window = windows.get(entity);
+            if (window == null || window[1] < stats.started()) // new, or started again since the last check
+                window = new long[]{moves, Math.max(now, stats.started())};
+            nextWindows.put(entity, window);
+
+            int speed = entity.speed();
+            long elapsed = now - window[1];
+            long p99 = stats.waitPercentile(99);
+            highest = Math.max(highest, p99);
+            if (elapsed < (long) speed * MIN_WINDOW_MOVES)
+                continue; // too soon to tell, the window goes on
+
+            double ratio = (moves - window[0]) * (double) speed / elapsed;
+            long idle = now - stats.lastMove();
+            lowest = Math.min(lowest, ratio);
+            window[0] = moves;
+            window[1] = now;
+
+            if (idle >= (long) speed * STALLED_MOVES && idle >= periodMillis) {
+                stalled++;
+                nextFlagged.put(entity, true);
+                if (flagged.get(entity) != Boolean.TRUE)
+                    gc.log().log(EventLog.Message.STALLED, entity.getName(), entity.lastPos, null, idle);
+            } else if (ratio < STARVED_RATIO) {
+                starved++;
+                nextFlagged.put(entity, false);
+                if (flagged.get(entity) != Boolean.FALSE)
+                    gc.log().log(EventLog.Message.STARVED, entity.getName(), ratio, null, p99);
+            }
+        }
+
+        windows = nextWindows;
+        flagged = nextFlagged;
+        this.starved = starved;
+        this.stalled = stalled;
+        this.lowestRateRatio = lowest;
+        this.highestWaitP99 = highest;
+
+        long[] ids = threads.findDeadlockedThreads();
+        int deadlocked = ids == null ? 0 : ids.length;
+        if (deadlocked > 0 && this.deadlocked == 0) {
+            StringBuilder names = new StringBuilder();
+            for (ThreadInfo info : threads.getThreadInfo(ids))
+                if (info != null)
+                    names.append(names.length() == 0 ? "" : ", ").append(info.getThreadName());
+            gc.log().log(EventLog.Message.DEADLOCK, names.toString(), null, null, deadlocked);
+            gc.log().flush();
+            out.println(dumpThreads());
+        }
+        this.deadlocked = deadlocked;
+    }
+
+    @Override
+    public int getStarvedEntities() {
+        return starved;
+    }
+
+    @Override
+    public int getStalledEntities() {
+        return stalled;
+    }
+
+    @Override
+    public int getDeadlockedThreads() {
+        return deadlocked;
+    }
+
+    @Override
+    public double getLowestRateRatio() {
+        return lowestRateRatio;
+    }
+
+    @Override
+    public long getHighestWaitP99Nanos() {
+        return highestWaitP99;
+    }
+
+    /**
+     * Move statistics of every running entity: moves, rate since it started, p99 move wait and time since its last
+     * move
+     *
+     * @return one line per entity
+     */
+    @Override
+    public String report() {
+        long now = gc.now();
+        StringBuilder sb = new StringBuilder(String.format("%-24s %8s %6s %14s %10s%n",
+                "entity", "moves", "rate", "p99 wait(us)", "idle(ms)"));
+
+        for (Entity entity : gc.entitiesSnapshot()) {
+            if (!entity.isAlive() || entity.isInterrupted())
+                continue;
+
+            MoveStats stats = entity.moveStats();
+            long lifetime = Math.max(1, now - stats.started());
+            sb.append(String.format("%-24s %8d %5.0f%% %14.1f %10d%n", entity.getName(), stats.moves(),
+                    Math.min(9.99, stats.moves() * (double) entity.speed() / lifetime) * 100,
+                    stats.waitPercentile(99) / 1000.0, now - stats.lastMove()));
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Stacks of every thread, with the locks they hold and wait for
+     *
+     * @return thread dump
+     */
+    @Override
+    public String dumpThreads() {
+        StringBuilder sb = new StringBuilder("Thread dump:\n");
+
+        for (ThreadInfo info : threads.dumpAllThreads(threads.isObjectMonitorUsageSupported(),
+                threads.isSynchronizerUsageSupported())) {
+            sb.append('"').append(info.getThreadName()).append("\" ").append(info.getThreadState());
+            if (info.getLockInfo() != null)
+                sb.append(" on ").append(info.getLockInfo());
+            if (info.getLockOwnerName() != null)
+                sb.append(" owned by \"").append(info.getLockOwnerName()).append('"');
+            sb.append('\n');
+
+            for (StackTraceElement frame : info.getStackTrace())
+                sb.append("    at ").append(frame).append('\n');
+            for (LockInfo lock : info.getLockedSynchronizers())
+                sb.append("    holds ").append(lock).append('\n');
+            sb.append('\n');
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Registers the watchdog in the platform MBean server. Failing to register is reported and otherwise ignored.
+     *
+     * @return name of the registered bean, null if not registered
+     */
+    private ObjectName register() {
+        try {
+            ObjectName name = new ObjectName("pacman:type=Watchdog,name=game" + watchdogs.incrementAndGet());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            return name;
+        } catch (JMException e) {
+            out.println("Unable to register the watchdog: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Removes the watchdog from the platform MBean server, if registered
+     *
+     * @param name of the registered bean, null if not registered
+     */
+    private void unregister(ObjectName name) {
+        if (name == null)
+            return;
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            out.println("Unable to unregister the watchdog: " + e.getMessage());
+        }
+    }
+}
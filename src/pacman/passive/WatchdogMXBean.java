@@ -0,0 +1,21 @@
+package pacman.passive;
+
+/**
+ * Management interface of the game watchdog, as exposed through JMX
+ */
+public interface WatchdogMXBean {
+
+    int getStarvedEntities();
+
+    int getStalledEntities();
+
+    int getDeadlockedThreads();
+
+    double getLowestRateRatio();
+
+    long getHighestWaitP99Nanos();
+
+    String report();
+
+    String dumpThreads();
+}